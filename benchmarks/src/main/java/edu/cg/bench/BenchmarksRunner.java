@@ -0,0 +1,25 @@
+package edu.cg.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the regular JMH command line options, but writes the results
+ * as JSON (to jmh-result.json) unless another result format or file was requested.
+ * The JSON files of different releases can be compared to track regressions.
+ */
+public class BenchmarksRunner {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		if(!cmdOptions.getResultFormat().hasValue())
+			builder.resultFormat(ResultFormatType.JSON);
+		if(!cmdOptions.getResult().hasValue())
+			builder.result("jmh-result.json");
+		Options options = builder.parent(cmdOptions).build();
+		new Runner(options).run();
+	}
+}
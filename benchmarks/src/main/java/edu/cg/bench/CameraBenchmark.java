@@ -0,0 +1,49 @@
+package edu.cg.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.camera.PinholeCamera;
+
+/**
+ * Micro benchmark of the pixel to view plain transformation of the camera.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CameraBenchmark {
+	private static final int RESOLUTION = 512;
+
+	private PinholeCamera camera;
+	private int x = 0, y = 0;
+
+	@Setup
+	public void setup() {
+		camera = new PinholeCamera(new Point(4, 4, 1.5), new Vec(-1.0, -1.0, -0.3), new Vec(0, 0, 1), 3);
+		camera.initResolution(RESOLUTION, RESOLUTION, 4.0);
+	}
+
+	@Benchmark
+	public Point transform() {
+		if(++x == RESOLUTION) {
+			x = 0;
+			y = (y + 1) % RESOLUTION;
+		}
+		return camera.transform(x, y);
+	}
+}
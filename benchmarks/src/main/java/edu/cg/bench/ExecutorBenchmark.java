@@ -0,0 +1,59 @@
+package edu.cg.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.Scenes;
+import edu.cg.scene.ExecutorStrategy;
+import edu.cg.scene.Scene;
+
+/**
+ * Compares the executor strategies of the renderer: the throughput of renders and their latency distribution.
+ * Each benchmark thread renders its own scene, so running with several threads (-t) simulates concurrent
+ * render requests, each rendered on its own executor.
+ * VIRTUAL_THREADS needs a Java 21 runtime, so it isn't benchmarked by default. Add it on Java 21 with
+ * -p strategy=FIXED_POOL,FORK_JOIN,VIRTUAL_THREADS (and -jvm <path of its java> if needed): on older runtimes
+ * its benchmarks fail in their setup, rather than reporting another strategy under its name.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ExecutorBenchmark {
+	@Param({"FIXED_POOL", "FORK_JOIN"})
+	public ExecutorStrategy strategy;
+
+	@Param({"scene1", "scene2", "scene3", "scene4", "scene5"})
+	public String sceneName;
+
+	@Param({"200"})
+	public int resolution;
+
+	private Scene scene;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		scene = (Scene)Scenes.class.getMethod(sceneName).invoke(null);
+		scene.initExecutorStrategy(strategy);
+	}
+
+	@Benchmark
+	public BufferedImage render() throws Exception {
+		return scene.render(resolution, resolution, 4.0, s -> {});
+	}
+}
@@ -0,0 +1,79 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+
+/**
+ * Micro benchmarks of the ray-shape intersection kernels.
+ * The rays are aimed at the unit cube around the origin so roughly half of them hit each shape.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntersectionBenchmark {
+	private static final int RAYS_COUNT = 1024;
+
+	private Ray[] rays;
+	private int next = 0;
+
+	private Sphere sphere;
+	private Plain plain;
+	private AxisAlignedBox box;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		rays = new Ray[RAYS_COUNT];
+		Point source = new Point(0, 0, 5);
+		for(int i = 0; i < RAYS_COUNT; ++i) {
+			Point target = new Point(4 * random.nextDouble() - 2, 4 * random.nextDouble() - 2, 0);
+			rays[i] = new Ray(source, target);
+		}
+
+		sphere = new Sphere(new Point(0, 0, 0), 1);
+		plain = new Plain(new Vec(0.3, 0.2, 1), new Point(0, 0, -1));
+		box = new AxisAlignedBox(new Point(-1, -1, -1), new Point(1, 1, 1));
+	}
+
+	private Ray nextRay() {
+		next = (next + 1) & (RAYS_COUNT - 1);
+		return rays[next];
+	}
+
+	@Benchmark
+	public Hit sphereIntersect() {
+		return sphere.intersect(nextRay());
+	}
+
+	@Benchmark
+	public Hit plainIntersect() {
+		return plain.intersect(nextRay());
+	}
+
+	@Benchmark
+	public Hit axisAlignedBoxIntersect() {
+		return box.intersect(nextRay());
+	}
+}
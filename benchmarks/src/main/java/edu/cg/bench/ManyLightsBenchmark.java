@@ -0,0 +1,59 @@
+package edu.cg.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.Scenes;
+import edu.cg.scene.Scene;
+
+/**
+ * Renders the lamps scene (scene6 has 10000 lamps) with a growing number of lamps, evaluating every lamp in range
+ * of each hit (0 light samples) or sampling a fixed number of lamps per hit. The time of the sampled renders
+ * should hardly grow with the number of lamps.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ManyLightsBenchmark {
+	@Param({"100", "1000", "10000"})
+	public int lampsCount;
+
+	//0 evaluates every lamp in range, larger values sample this number of lamps per hit
+	@Param({"0", "4"})
+	public int lightSamples;
+
+	//the intensity below which the lamps aren't evaluated, when every lamp in range is (see Scene.initLightCutoff)
+	@Param({"0.00196"})
+	public double lightCutoff;
+
+	@Param({"200"})
+	public int resolution;
+
+	private Scene scene;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		scene = Scenes.lampsScene(lampsCount).initLightSamples(lightSamples).initLightCutoff(lightCutoff);
+	}
+
+	@Benchmark
+	public BufferedImage render() throws Exception {
+		return scene.render(resolution, resolution, 4.0, s -> {});
+	}
+}
@@ -0,0 +1,65 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Vec;
+
+/**
+ * Micro benchmarks of the reflection and refraction direction computations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OpsBenchmark {
+	private static final int VECTORS_COUNT = 1024;
+
+	private Vec[] directions;
+	private Vec normal;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		directions = new Vec[VECTORS_COUNT];
+		for(int i = 0; i < VECTORS_COUNT; ++i)
+			directions[i] = new Vec(random.nextDouble() - 0.5, random.nextDouble() - 0.5, -random.nextDouble()).normalize();
+		normal = new Vec(0, 0, 1);
+	}
+
+	private Vec nextDirection() {
+		next = (next + 1) & (VECTORS_COUNT - 1);
+		return directions[next];
+	}
+
+	@Benchmark
+	public Vec reflect() {
+		return Ops.reflect(nextDirection(), normal);
+	}
+
+	@Benchmark
+	public Vec refractIntoGlass() {
+		return Ops.refract(nextDirection(), normal, 1.0, 1.5);
+	}
+
+	@Benchmark
+	public Vec refractOutOfGlass() {
+		//includes total internal reflection for the grazing directions
+		return Ops.refract(nextDirection(), normal, 1.5, 1.0);
+	}
+}
@@ -0,0 +1,56 @@
+package edu.cg.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.Scenes;
+import edu.cg.scene.Scene;
+
+/**
+ * Macro benchmarks rendering the bundled scenes at a fixed resolution.
+ * Scenes 4 and 5 use random materials, so a new scene is created for each trial
+ * and the scores of different forks may vary more than the other scenes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SceneRenderBenchmark {
+	@Param({"scene1", "scene2", "scene3", "scene4", "scene5"})
+	public String sceneName;
+
+	@Param({"400"})
+	public int resolution;
+
+	//1 traces the primary rays one by one, larger values trace them in square packets
+	@Param({"1", "8"})
+	public int packetSize;
+
+	private Scene scene;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		scene = (Scene)Scenes.class.getMethod(sceneName).invoke(null);
+		scene.initPacketSize(packetSize);
+	}
+
+	@Benchmark
+	public BufferedImage render() throws Exception {
+		return scene.render(resolution, resolution, 4.0, s -> {});
+	}
+}
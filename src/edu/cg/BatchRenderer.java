@@ -0,0 +1,388 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import com.google.gson.Gson;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.menu.RenderCache;
+import edu.cg.menu.SceneLoader;
+import edu.cg.scene.BinaryScene;
+import edu.cg.scene.ExecutorStrategy;
+import edu.cg.scene.Scene;
+import edu.cg.scene.camera.PinholeCamera;
+
+/**
+ * A headless entry point which renders scene files without opening any window.
+ * Usage:
+ * java -Djava.awt.headless=true edu.cg.BatchRenderer [options] scene1.json [scene2.json ...]
+ * The scene files may also be binary scene files (see BinaryScene).
+ * The rendered images are written to the outputs folder.
+ */
+public class BatchRenderer {
+	private int width = 400;
+	private int height = 400;
+	private double viewPlainWidth = 4.0;
+	//scene overrides, null means keeping the value of the scene file
+	private Integer antiAliasingFactor = null;
+	private Integer maxRecursionLevel = null;
+	private Boolean renderReflections = null;
+	private Boolean renderRefractions = null;
+	private Integer tileSize = null;
+	private Integer threadsCount = null;
+	private Integer packetSize = null;
+	private Boolean occludersCache = null;
+	private Double adaptiveThreshold = null;
+	private Double contributionThreshold = null;
+	private Double lightCutoff = null;
+	private Integer lightSamples = null;
+	private ExecutorStrategy executorStrategy = null;
+	private boolean verbose = false;
+	private boolean writeMetrics = false;
+	private boolean writeBinary = false;
+	private int workersCount = 0; //0 means rendering in this process
+	private int tileTimeoutSeconds = 120;
+	//a camera path file renders a sequence of frames instead of a single image
+	private String pathFile = null;
+	private Integer framesCount = null; //null means a frame per keyframe
+	private RenderCache renderCache = null;
+	private String cacheDirectory = null;
+	private long cacheMaxBytes = RenderCache.DEFAULT_MAX_BYTES;
+	private List<String> sceneFiles = new ArrayList<>();
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		BatchRenderer renderer = new BatchRenderer();
+		try {
+			renderer.parseArguments(args);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		File imagesOutputDir = new File("outputs");
+		if(!imagesOutputDir.exists() && !imagesOutputDir.mkdir())
+			throw new RuntimeException("Couldn't create the folder outputs...");
+
+		int failures = 0;
+		for(String sceneFile : renderer.sceneFiles)
+			if(!renderer.render(sceneFile, imagesOutputDir))
+				++failures;
+
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static void printUsage() {
+		String endl = System.lineSeparator();
+		System.err.println("Usage: java -Djava.awt.headless=true edu.cg.BatchRenderer [options] scene.json|scene" +
+				BinaryScene.EXTENSION + "..." + endl +
+				"Options:" + endl +
+				"  -w, --width <pixels>             image width (default 400)" + endl +
+				"  -h, --height <pixels>            image height (default 400)" + endl +
+				"  -v, --view-plain-width <width>   view plain width (default 4.0)" + endl +
+				"  -a, --aa <1|2|3>                 anti aliasing factor" + endl +
+				"  -r, --recursion <1..10>          max recursion level" + endl +
+				"      --reflections <true|false>   render reflections" + endl +
+				"      --refractions <true|false>   render refractions" + endl +
+				"      --tile <pixels>              tile size" + endl +
+				"      --threads <count>            rendering threads" + endl +
+				"      --executor <fixed-pool|fork-join|virtual-threads>  how the tiles are run on the threads (default fork-join)" + endl +
+				"      --packets <pixels>           side of the primary ray packets (1 disables packets)" + endl +
+				"      --occluders-cache <true|false>  test the last blocker of each light first" + endl +
+				"      --adaptive-threshold <contrast>  color contrast above which a pixel is supersampled (default 0.1)" + endl +
+				"      --min-contribution <weight>  smallest weight of a traced reflected/refracted ray (default 0)" + endl +
+				"      --light-cutoff <intensity>   intensity below which point lights and spotlights are ignored (default 0)" + endl +
+				"      --light-samples <count>      point lights sampled per hit, by their estimated contribution (0 evaluates all)" + endl +
+				"      --metrics                    write a JSON report of the render metrics next to each image" + endl +
+				"      --workers <count>            render in worker processes, which are given tiles of the image" + endl +
+				"      --tile-timeout <seconds>     time a worker has to render a tile before it is destroyed (default 120)" + endl +
+				"      --path <file.json>           render the frames of a camera path: a JSON array of keyframes" + endl +
+				"                                   {\"position\": {x, y, z}, \"towards\": {...}, \"up\": {...}, \"distance\": d}" + endl +
+				"      --frames <count>             the number of frames along the camera path" + endl +
+				"      --cache <dir>                reuse the images of identical renders from a render cache folder" + endl +
+				"      --cache-size <MB>            the size of the render cache (default " +
+				RenderCache.DEFAULT_MAX_BYTES / (1024 * 1024) + " MB)" + endl +
+				"      --write-binary               write each scene as a binary scene file (" + BinaryScene.EXTENSION + ") next to its image" + endl +
+				"      --verbose                    print the renderer log");
+	}
+
+	private void parseArguments(String[] args) {
+		for(int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			if(!arg.startsWith("-")) {
+				sceneFiles.add(arg);
+				continue;
+			}
+			if(arg.equals("--verbose")) {
+				verbose = true;
+				continue;
+			}
+			if(arg.equals("--metrics")) {
+				writeMetrics = true;
+				continue;
+			}
+			if(arg.equals("--write-binary")) {
+				writeBinary = true;
+				continue;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			try {
+				switch(arg) {
+				case "-w":
+				case "--width":
+					width = positive(arg, Integer.parseInt(value));
+					break;
+				case "-h":
+				case "--height":
+					height = positive(arg, Integer.parseInt(value));
+					break;
+				case "-v":
+				case "--view-plain-width":
+					viewPlainWidth = Double.parseDouble(value);
+					if(viewPlainWidth <= 0)
+						throw new IllegalArgumentException("View plain width argument must be positive");
+					break;
+				case "-a":
+				case "--aa":
+					antiAliasingFactor = Integer.parseInt(value);
+					if(antiAliasingFactor < 1 | antiAliasingFactor > 3)
+						throw new IllegalArgumentException("Anti aliasing factor must be 1, 2 or 3");
+					break;
+				case "-r":
+				case "--recursion":
+					maxRecursionLevel = Integer.parseInt(value);
+					if(maxRecursionLevel < 1 | maxRecursionLevel > 10)
+						throw new IllegalArgumentException("Recursion level must be an Integer between 1 to 10.");
+					break;
+				case "--reflections":
+					renderReflections = Boolean.parseBoolean(value);
+					break;
+				case "--refractions":
+					renderRefractions = Boolean.parseBoolean(value);
+					break;
+				case "--tile":
+					tileSize = positive(arg, Integer.parseInt(value));
+					break;
+				case "--threads":
+					threadsCount = positive(arg, Integer.parseInt(value));
+					break;
+				case "--executor":
+					try {
+						executorStrategy = ExecutorStrategy.valueOf(value.toUpperCase().replace('-', '_'));
+					} catch(IllegalArgumentException e) {
+						throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+					}
+					if(!executorStrategy.isAvailable())
+						throw new IllegalArgumentException(value + " isn't supported by Java " + Runtime.version().feature() +
+								", it needs Java 21 or later");
+					break;
+				case "--path":
+					pathFile = value;
+					break;
+				case "--frames":
+					framesCount = positive(arg, Integer.parseInt(value));
+					break;
+				case "--cache":
+					cacheDirectory = value;
+					break;
+				case "--cache-size":
+					cacheMaxBytes = positive(arg, Integer.parseInt(value)) * 1024L * 1024;
+					break;
+				case "--workers":
+					workersCount = positive(arg, Integer.parseInt(value));
+					break;
+				case "--tile-timeout":
+					tileTimeoutSeconds = positive(arg, Integer.parseInt(value));
+					break;
+				case "--packets":
+					packetSize = positive(arg, Integer.parseInt(value));
+					break;
+				case "--occluders-cache":
+					occludersCache = Boolean.parseBoolean(value);
+					break;
+				case "--adaptive-threshold":
+					adaptiveThreshold = Double.parseDouble(value);
+					if(adaptiveThreshold < 0)
+						throw new IllegalArgumentException("Adaptive threshold can't be negative");
+					break;
+				case "--min-contribution":
+					contributionThreshold = Double.parseDouble(value);
+					if(contributionThreshold < 0)
+						throw new IllegalArgumentException("Contribution threshold can't be negative");
+					break;
+				case "--light-cutoff":
+					lightCutoff = Double.parseDouble(value);
+					if(lightCutoff < 0)
+						throw new IllegalArgumentException("Light cutoff can't be negative");
+					break;
+				case "--light-samples":
+					lightSamples = Integer.parseInt(value);
+					if(lightSamples < 0)
+						throw new IllegalArgumentException("Light samples can't be negative");
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				}
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+			}
+		}
+
+		if(sceneFiles.isEmpty())
+			throw new IllegalArgumentException("No scene files were given");
+		if(pathFile != null && workersCount > 0)
+			throw new IllegalArgumentException("Camera paths can't be rendered by worker processes");
+		if(framesCount != null && pathFile == null)
+			throw new IllegalArgumentException("--frames requires a camera path");
+		if(cacheDirectory != null)
+			renderCache = new RenderCache(new File(cacheDirectory), cacheMaxBytes);
+	}
+
+	private static int positive(String arg, int value) {
+		if(value <= 0)
+			throw new IllegalArgumentException(arg + " argument must be positive");
+		return value;
+	}
+
+	private void applyOverrides(Scene scene) {
+		if(antiAliasingFactor != null)
+			scene.initAntiAliasingFactor(antiAliasingFactor);
+		if(maxRecursionLevel != null)
+			scene.initMaxRecursionLevel(maxRecursionLevel);
+		if(renderReflections != null)
+			scene.initRenderReflections(renderReflections);
+		if(renderRefractions != null)
+			scene.initRenderRefarctions(renderRefractions);
+		if(tileSize != null)
+			scene.initTileSize(tileSize);
+		if(threadsCount != null)
+			scene.initThreadsCount(threadsCount);
+		if(executorStrategy != null)
+			scene.initExecutorStrategy(executorStrategy);
+		if(packetSize != null)
+			scene.initPacketSize(packetSize);
+		if(occludersCache != null)
+			scene.initOccludersCache(occludersCache);
+		if(adaptiveThreshold != null)
+			scene.initAdaptiveThreshold(adaptiveThreshold);
+		if(contributionThreshold != null)
+			scene.initContributionThreshold(contributionThreshold);
+		if(lightCutoff != null)
+			scene.initLightCutoff(lightCutoff);
+		if(lightSamples != null)
+			scene.initLightSamples(lightSamples);
+	}
+
+	/**
+	 * Renders the frames of the camera path into numbered images. Each frame is encoded on a separate
+	 * thread while the next frame is rendered. At most one more frame waits for the encoder, frames beyond
+	 * it are encoded by the rendering thread, so the frames waiting for encoding don't pile up in memory.
+	 */
+	private boolean renderSequence(Scene scene, File outputDir, Logger logger) throws Exception {
+		List<PinholeCamera> keyframes = new ArrayList<>();
+		String pathJson = new String(Files.readAllBytes(Paths.get(pathFile)), StandardCharsets.UTF_8);
+		for(Keyframe keyframe : new Gson().fromJson(pathJson, Keyframe[].class))
+			keyframes.add(new PinholeCamera(keyframe.position, keyframe.towards, keyframe.up, keyframe.distance));
+		List<PinholeCamera> cameras = PinholeCamera.path(keyframes, framesCount != null ? framesCount : keyframes.size());
+
+		ExecutorService encoder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Future<?>> encodings = new ArrayList<>();
+		long start = System.nanoTime();
+		try {
+			scene.renderSequence(cameras, width, height, viewPlainWidth, logger, (frame, img) -> {
+				File output = new File(outputDir, String.format("%s_%04d.png", scene.getName(), frame));
+				encodings.add(encoder.submit(() -> {
+					ImageIO.write(img, "png", output);
+					return null;
+				}));
+			});
+			for(Future<?> encoding : encodings)
+				encoding.get();
+		} finally {
+			encoder.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		if(writeMetrics)
+			Files.write(new File(outputDir, scene.getName() + ".metrics.json").toPath(),
+					scene.getMetrics().toJson().getBytes(StandardCharsets.UTF_8));
+		long rays = scene.getRaysCount();
+		System.out.println(String.format("%s: %d frames of %dx%d in %.3f s (%.2f frames/s), %d rays (%.0f rays/s) -> %s",
+				scene.getName(), cameras.size(), width, height, seconds, cameras.size() / seconds, rays, rays / seconds,
+				new File(outputDir, scene.getName() + "_*.png").getPath()));
+		return true;
+	}
+
+	private static class Keyframe {
+		Point position = new Point();
+		Vec towards = new Vec(0, 0, -1);
+		Vec up = new Vec(0, 1, 0);
+		double distance = 1;
+	}
+
+	private boolean render(String sceneFile, File outputDir) {
+		try {
+			Logger logger = verbose ? s -> System.out.println("  " + s) : s -> {};
+			Scene scene = new SceneLoader().load(sceneFile, logger);
+			if(writeBinary)
+				BinaryScene.write(scene, new File(outputDir, scene.getName() + BinaryScene.EXTENSION).toPath());
+			applyOverrides(scene);
+			if(pathFile != null)
+				return renderSequence(scene, outputDir, logger);
+
+			long start = System.nanoTime();
+			String cacheKey = renderCache != null ? RenderCache.key(scene, width, height, viewPlainWidth) : null;
+			BufferedImage img = renderCache != null ? renderCache.get(cacheKey, logger) : null;
+			boolean cached = img != null;
+			long rays = 0;
+			if(!cached) {
+				if(workersCount > 0) {
+					RenderCoordinator coordinator = new RenderCoordinator(workersCount).initVerboseWorkers(verbose)
+							.initTileTimeout(tileTimeoutSeconds * 1000L);
+					img = coordinator.render(scene, width, height, viewPlainWidth, logger);
+					rays = coordinator.getRaysCount();
+				} else {
+					img = scene.render(width, height, viewPlainWidth, logger);
+					rays = scene.getRaysCount();
+				}
+				if(renderCache != null)
+					renderCache.put(cacheKey, img, logger);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			File output = new File(outputDir, scene.getName() + ".png");
+			ImageIO.write(img, "png", output);
+			//the metrics of renders in worker processes stay in the workers
+			if(writeMetrics && scene.getMetrics() != null)
+				Files.write(new File(outputDir, scene.getName() + ".metrics.json").toPath(),
+						scene.getMetrics().toJson().getBytes(StandardCharsets.UTF_8));
+
+			System.out.println(String.format("%s: %dx%d in %.3f s, %d rays (%.0f rays/s)%s -> %s",
+					scene.getName(), width, height, seconds, rays, rays / seconds, cached ? " from the render cache" : "",
+					output.getPath()));
+			return true;
+		} catch(Exception e) {
+			System.err.println("Couldn't render " + sceneFile + ": " + e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package edu.cg;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.Scene;
+
+/**
+ * Renders a scene with several worker processes (see RenderWorker) on the local machine.
+ * The image is split into tiles, which are handed to the workers one at a time over the pipes of
+ * their standard input and output, so faster workers get more tiles. The tiles of a worker that
+ * fails, or that doesn't reply to a tile within the tile timeout, are re-queued and rendered by the other
+ * workers (the worker process is destroyed).
+ */
+public class RenderCoordinator {
+	private final int workersCount;
+	private int tileSize = 128;
+	private long tileTimeoutMillis = 120000;
+	private boolean verboseWorkers = false;
+	private long raysCount = 0;
+
+	/**
+	 * @param workersCount - the number of worker processes
+	 */
+	public RenderCoordinator(int workersCount) {
+		if(workersCount < 1)
+			throw new IllegalArgumentException("Workers count must be positive");
+		this.workersCount = workersCount;
+	}
+
+	/**
+	 * Sets the size (in pixels) of the square tiles handed to the workers.
+	 * Each worker splits its tiles further into the tiles of the scene, which are rendered by its threads.
+	 */
+	public RenderCoordinator initTileSize(int tileSize) {
+		if(tileSize < 1)
+			throw new IllegalArgumentException("Tile size must be positive");
+		this.tileSize = tileSize;
+		return this;
+	}
+
+	/**
+	 * Sets the time a worker is given to reply to a tile. A worker that doesn't reply in time is considered hung:
+	 * it is destroyed and its tile is given to another worker.
+	 */
+	public RenderCoordinator initTileTimeout(long tileTimeoutMillis) {
+		if(tileTimeoutMillis < 1)
+			throw new IllegalArgumentException("Tile timeout must be positive");
+		this.tileTimeoutMillis = tileTimeoutMillis;
+		return this;
+	}
+
+	/**
+	 * Sets whether the workers write their log to the standard error.
+	 */
+	public RenderCoordinator initVerboseWorkers(boolean verboseWorkers) {
+		this.verboseWorkers = verboseWorkers;
+		return this;
+	}
+
+	/**
+	 * @return the number of rays traced by the workers in the last render.
+	 */
+	public long getRaysCount() {
+		return raysCount;
+	}
+
+	/**
+	 * Renders the scene with the worker processes.
+	 * The rendering options of the scene (tile size, threads count, etc.) are passed to the workers.
+	 * A scene without threads count gets an equal share of the processors in each worker.
+	 * @throws IOException if all the workers failed before the image was complete
+	 */
+	public BufferedImage render(Scene scene, int imgWidth, int imgHeight, double viewPlainWidth, Logger logger)
+			throws IOException, InterruptedException {
+		byte[] sceneJson = GsonMaker.getInstance().toJson(scene).getBytes(StandardCharsets.UTF_8);
+		int threadsCount = scene.getThreadsCount() > 0 ? scene.getThreadsCount() :
+			Math.max(1, Runtime.getRuntime().availableProcessors() / workersCount);
+
+		BlockingQueue<Tile> pending = new LinkedBlockingQueue<>();
+		int tilesX = (imgWidth + tileSize - 1) / tileSize, tilesY = (imgHeight + tileSize - 1) / tileSize;
+		for(int i = 0; i < tilesX * tilesY; ++i) {
+			int x = (i % tilesX) * tileSize, y = (i / tilesX) * tileSize;
+			pending.add(new Tile(i, new Rectangle(x, y, Math.min(tileSize, imgWidth - x), Math.min(tileSize, imgHeight - y))));
+		}
+		AtomicInteger remaining = new AtomicInteger(pending.size());
+		AtomicLong rays = new AtomicLong();
+		BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
+		int[] frameBuffer = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		logger.log("Rendering " + scene.getName() + " in " + pending.size() + " tiles of " + tileSize + "x" + tileSize +
+				" pixels on " + workersCount + " worker processes with " + threadsCount + " threads each");
+
+		List<Process> processes = new ArrayList<>();
+		try {
+			for(int w = 0; w < workersCount; ++w)
+				processes.add(startWorker());
+		} catch(IOException e) {
+			for(Process process : processes)
+				process.destroyForcibly();
+			throw e;
+		}
+
+		List<Thread> threads = new ArrayList<>();
+		for(int w = 0; w < workersCount; ++w) {
+			Process process = processes.get(w);
+			int index = w;
+			Thread thread = new Thread(() -> {
+				int tilesDone = 0;
+				Tile tile = null;
+				//the replies are read on another thread, so a hung worker can't block this thread beyond the tile timeout
+				ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+					Thread readerThread = new Thread(r, "render-worker-" + index + "-reader");
+					readerThread.setDaemon(true);
+					return readerThread;
+				});
+				try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+						DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+					out.writeInt(sceneJson.length);
+					out.write(sceneJson);
+					out.writeInt(imgWidth);
+					out.writeInt(imgHeight);
+					out.writeDouble(viewPlainWidth);
+					out.writeInt(scene.getTileSize());
+					out.writeInt(threadsCount);
+					out.writeInt(scene.getPacketSize());
+					out.writeBoolean(scene.isOccludersCache());
+					out.writeDouble(scene.getAdaptiveThreshold());
+					out.writeDouble(scene.getContributionThreshold());
+					out.writeDouble(scene.getLightCutoff());
+					out.writeInt(scene.getLightSamples());
+					out.writeUTF(scene.getExecutorStrategy().name());
+
+					while(remaining.get() > 0) {
+						//tiles of failed workers may still be re-queued, so the queue is polled until all tiles are done
+						tile = pending.poll(100, TimeUnit.MILLISECONDS);
+						if(tile == null)
+							continue;
+						Rectangle r = tile.region;
+						out.writeInt(tile.id);
+						out.writeInt(r.x);
+						out.writeInt(r.y);
+						out.writeInt(r.width);
+						out.writeInt(r.height);
+						out.flush();
+
+						int[] pixels = new int[r.width * r.height];
+						int id = tile.id;
+						Future<Long> reply = reader.submit(() -> readTile(in, id, pixels));
+						try {
+							rays.addAndGet(reply.get(tileTimeoutMillis, TimeUnit.MILLISECONDS));
+						} catch(TimeoutException e) {
+							//destroying the worker closes its pipes, which ends the pending read
+							process.destroyForcibly();
+							throw new IOException("no reply to tile " + id + " within " + tileTimeoutMillis + " ms");
+						} catch(ExecutionException e) {
+							throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+						}
+						for(int y = 0; y < r.height; ++y)
+							System.arraycopy(pixels, y * r.width, frameBuffer, (r.y + y) * imgWidth + r.x, r.width);
+						tile = null;
+						++tilesDone;
+						int left = remaining.decrementAndGet();
+						int total = tilesX * tilesY, done = total - left;
+						//log the progress every 10 percents
+						if(done * 10 / total != (done - 1) * 10 / total)
+							logger.log("Rendered " + done + "/" + total + " tiles (" + (done * 100 / total) + "%)");
+					}
+					out.writeInt(RenderWorker.STOP);
+					out.flush();
+					if(!process.waitFor(tileTimeoutMillis, TimeUnit.MILLISECONDS)) {
+						process.destroyForcibly();
+						logger.log("Worker " + index + " didn't exit, destroyed it");
+					}
+					logger.log("Worker " + index + " rendered " + tilesDone + " tiles.");
+				} catch(IOException e) {
+					if(tile != null)
+						pending.add(tile);
+					process.destroyForcibly();
+					logger.log("Worker " + index + " failed after " + tilesDone + " tiles (" + e + ")" +
+							(tile != null ? ", re-queued tile " + tile.id : ""));
+				} catch(InterruptedException e) {
+					process.destroyForcibly();
+				} finally {
+					reader.shutdownNow();
+				}
+			}, "render-worker-" + w);
+			threads.add(thread);
+			thread.start();
+		}
+
+		try {
+			for(Thread thread : threads)
+				thread.join();
+		} finally {
+			for(Thread thread : threads)
+				thread.interrupt();
+		}
+		raysCount = rays.get();
+		if(remaining.get() > 0)
+			throw new IOException("All the workers failed, " + remaining.get() + " tiles weren't rendered");
+		return img;
+	}
+
+	/**
+	 * Reads the reply of a worker to a tile: its id, the number of rays traced to render it and its pixels.
+	 * @return the number of rays
+	 */
+	private static long readTile(DataInputStream in, int id, int[] pixels) throws IOException {
+		if(in.readInt() != id)
+			throw new IOException("Unexpected tile");
+		long rays = in.readLong();
+		for(int i = 0; i < pixels.length; ++i)
+			pixels[i] = in.readInt();
+		return rays;
+	}
+
+	/**
+	 * Starts a worker process. The tests override it to start workers that fail.
+	 */
+	Process startWorker() throws IOException {
+		return startJava(RenderWorker.class.getName());
+	}
+
+	/**
+	 * Starts a Java process, with the class path of this one, which runs the main method of the given class.
+	 */
+	Process startJava(String mainClass) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<String> command = new ArrayList<>();
+		command.add(java);
+		command.add("-Djava.awt.headless=true");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(mainClass);
+		if(verboseWorkers)
+			command.add("--verbose");
+		return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+	}
+
+	private static class Tile {
+		final int id;
+		final Rectangle region;
+
+		Tile(int id, Rectangle region) {
+			this.id = id;
+			this.region = region;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package edu.cg;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.ExecutorStrategy;
+import edu.cg.scene.RegionRenderer;
+import edu.cg.scene.Scene;
+
+/**
+ * A worker process of a render split between several processes (see RenderCoordinator).
+ * The worker reads the scene and then tile assignments from its standard input,
+ * and writes the rendered tiles to its standard output. The log goes to the standard error.
+ *
+ * The protocol (in the format of DataOutputStream):
+ * coordinator to worker: the length of the scene JSON and its UTF-8 bytes, the image width and height,
+ *                        the view plain width, the rendering options of the scene (tile size, threads count,
+ *                        packet size, occluders cache, adaptive threshold, contribution threshold, light cutoff,
+ *                        light samples and executor strategy), and then tiles: id, x, y, width and height.
+ *                        A negative id ends the work.
+ * worker to coordinator: per tile: its id, the number of rays traced to render it, and its pixels row by row.
+ */
+public class RenderWorker {
+	static final int STOP = -1;
+
+	public static void main(String[] args) throws Exception {
+		boolean verbose = args.length > 0 && args[0].equals("--verbose");
+		Logger logger = verbose ? s -> System.err.println("  worker " + ProcessHandle.current().pid() + ": " + s) : s -> {};
+		//the standard output is kept for the tiles, so nothing else may print to it
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		System.setOut(System.err);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+
+		try {
+			new RenderWorker().run(in, out, logger);
+		} catch(EOFException e) {
+			//the coordinator is gone, there is nobody to report to
+			System.exit(1);
+		}
+	}
+
+	private void run(DataInputStream in, DataOutputStream out, Logger logger) throws Exception {
+		byte[] sceneJson = new byte[in.readInt()];
+		in.readFully(sceneJson);
+		Scene scene = GsonMaker.getInstance().fromJson(new String(sceneJson, StandardCharsets.UTF_8), Scene.class);
+		int imgWidth = in.readInt();
+		int imgHeight = in.readInt();
+		double viewPlainWidth = in.readDouble();
+		scene.initTileSize(in.readInt())
+				.initThreadsCount(in.readInt())
+				.initPacketSize(in.readInt())
+				.initOccludersCache(in.readBoolean())
+				.initAdaptiveThreshold(in.readDouble())
+				.initContributionThreshold(in.readDouble())
+				.initLightCutoff(in.readDouble())
+				.initLightSamples(in.readInt())
+				.initExecutorStrategy(ExecutorStrategy.valueOf(in.readUTF()));
+		//adaptive supersampling compares each pixel with its neighbours, so the tiles are rendered with a margin
+		int margin = scene.getFactor() > 1 ? 1 : 0;
+
+		//the scene is prepared once for all the tiles, and released once the work ends or the coordinator is gone
+		try(RegionRenderer renderer = scene.prepareRegions(imgWidth, imgHeight, viewPlainWidth, logger)) {
+			for(int id = in.readInt(); id >= 0; id = in.readInt()) {
+				Rectangle tile = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+				Rectangle region = new Rectangle(tile.x - margin, tile.y - margin, tile.width + 2 * margin,
+						tile.height + 2 * margin).intersection(new Rectangle(0, 0, imgWidth, imgHeight));
+				BufferedImage img = renderer.render(region);
+				int[] pixels = img.getRGB(tile.x - region.x, tile.y - region.y, tile.width, tile.height, null, 0, tile.width);
+
+				out.writeInt(id);
+				out.writeLong(renderer.getRaysCount());
+				for(int rgb : pixels)
+					out.writeInt(rgb & 0xFFFFFF);
+				out.flush();
+			}
+		}
+	}
+}
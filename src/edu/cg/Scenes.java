@@ -1,5 +1,7 @@
 package edu.cg;
 
+import java.util.Random;
+
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Vec;
 import edu.cg.scene.Scene;
@@ -154,4 +156,49 @@ public class Scenes {
 				.initRenderRefarctions(true).initRenderReflections(true).initMaxRecursionLevel(6);
 	}
 
+	public static Scene scene6() {
+		return lampsScene(10000);
+	}
+
+	/**
+	 * A field of boxes lit by the given number of small colored lamps, for rendering scenes with many lights
+	 * (see Scene.initLightSamples). The lamps are placed with a fixed seed, so the scene is the same on every call.
+	 */
+	public static Scene lampsScene(int lampsCount) {
+		Random random = new Random(6);
+		Scene lampsScene = new Scene().initName("scene6").initAmbient(new Vec(0.1))
+				.initBackgroundColor(new Vec(0.02, 0.02, 0.06))
+				.initCamera(new Point(0.0, -20.0, 7.0), new Vec(0.0, 1.0, -0.4), new Vec(0.0, 0.0, 1.0), 2.0)
+				.initAntiAliasingFactor(1).initRenderReflections(true).initMaxRecursionLevel(2);
+
+		Shape floorShape = new Plain(new Vec(0.0, 0.0, 1.0), new Point(0.0, 0.0, 0.0));
+		Material floorMat = new Material().initKa(new Vec(0.2)).initKd(new Vec(0.6)).initKs(new Vec(0.2))
+				.initShininess(10).initReflectionIntensity(0.2);
+		lampsScene.addSurface(new Surface(floorShape, floorMat));
+		for (int i = -4; i <= 4; i++) {
+			for (int j = -4; j <= 4; j++) {
+				Shape boxShape = new AxisAlignedBox(new Point(4.0 * i - 0.8, 4.0 * j - 0.8, 0.0),
+						new Point(4.0 * i + 0.8, 4.0 * j + 0.8, 2.0));
+				Material boxMat = Material.getMetalMaterial().initKd(new Vec(0.7)).initReflectionIntensity(0.3);
+				lampsScene.addSurface(new Surface(boxShape, boxMat));
+			}
+		}
+
+		for (int i = 0; i < lampsCount; i++) {
+			Point position = new Point(40.0 * random.nextDouble() - 20.0, 40.0 * random.nextDouble() - 20.0,
+					0.3 + 3.0 * random.nextDouble());
+			// Lamps inside the boxes (or right next to them) are placed again
+			double dx = position.x - 4.0 * Math.max(-4, Math.min(4, Math.round(position.x / 4.0)));
+			double dy = position.y - 4.0 * Math.max(-4, Math.min(4, Math.round(position.y / 4.0)));
+			if (Math.abs(dx) < 1.0 && Math.abs(dy) < 1.0 && position.z < 2.2) {
+				i--;
+				continue;
+			}
+			Vec intensity = new Vec(random.nextDouble(), random.nextDouble(), random.nextDouble()).mult(0.05);
+			lampsScene.addLightSource(new PointLight().initPosition(position).initIntensity(intensity)
+					.initDecayFactors(0.5, 0.2, 1.0));
+		}
+		return lampsScene;
+	}
+
 }
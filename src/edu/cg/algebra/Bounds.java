@@ -0,0 +1,97 @@
+package edu.cg.algebra;
+
+public class Bounds {
+	public double minX, minY, minZ;
+	public double maxX, maxY, maxZ;
+	
+	public Bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+	}
+	
+	public Bounds(Point minPoint, Point maxPoint) {
+		this(minPoint.x, minPoint.y, minPoint.z, maxPoint.x, maxPoint.y, maxPoint.z);
+	}
+	
+	/**
+	 * Creates an empty bounds, i.e. a bounds that contains no point.
+	 */
+	public Bounds() {
+		this(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+	}
+	
+	/**
+	 * Grows this bounds so it also contains the other bounds.
+	 * @param other - the bounds to include
+	 * @return this bounds
+	 */
+	public Bounds include(Bounds other) {
+		minX = Math.min(minX, other.minX);
+		minY = Math.min(minY, other.minY);
+		minZ = Math.min(minZ, other.minZ);
+		maxX = Math.max(maxX, other.maxX);
+		maxY = Math.max(maxY, other.maxY);
+		maxZ = Math.max(maxZ, other.maxZ);
+		return this;
+	}
+	
+	/**
+	 * Grows this bounds so it also contains the given point.
+	 * @return this bounds
+	 */
+	public Bounds include(double x, double y, double z) {
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		minZ = Math.min(minZ, z);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+		maxZ = Math.max(maxZ, z);
+		return this;
+	}
+	
+	public double center(int axis) {
+		switch(axis) {
+		case 0:
+			return 0.5 * (minX + maxX);
+		case 1:
+			return 0.5 * (minY + maxY);
+		default:
+			return 0.5 * (minZ + maxZ);
+		}
+	}
+	
+	public double extent(int axis) {
+		switch(axis) {
+		case 0:
+			return maxX - minX;
+		case 1:
+			return maxY - minY;
+		default:
+			return maxZ - minZ;
+		}
+	}
+	
+	/**
+	 * @return the index (0 = x, 1 = y, 2 = z) of the longest axis of the bounds.
+	 */
+	public int longestAxis() {
+		double ex = extent(0), ey = extent(1), ez = extent(2);
+		if(ex >= ey & ex >= ez)
+			return 0;
+		return ey >= ez ? 1 : 2;
+	}
+	
+	public boolean isEmpty() {
+		return minX > maxX | minY > maxY | minZ > maxZ;
+	}
+	
+	@Override
+	public String toString() {
+		return "[(" + minX + ", " + minY + ", " + minZ + "), (" + maxX + ", " + maxY + ", " + maxZ + ")]";
+	}
+}
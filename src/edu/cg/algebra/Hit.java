@@ -8,6 +8,8 @@ public class Hit implements Comparable<Hit> {
 	
 	private boolean isWithin = false;
 	private Surface surface = null;
+	private int surfaceIndex = -1;
+	private long instanceKey = 0;
 	
 	public Hit(double t, Vec normalToSurface) {
 		this.t = t;
@@ -30,6 +32,26 @@ public class Hit implements Comparable<Hit> {
 		this.surface = surface;
 	}
 	
+	//the position of the surface in the scene list, or -1 if unknown
+	public int getSurfaceIndex() {
+		return surfaceIndex;
+	}
+	
+	public Hit setSurfaceIndex(int surfaceIndex) {
+		this.surfaceIndex = surfaceIndex;
+		return this;
+	}
+	
+	//tells apart hits of different instances of a group, which are on the same surfaces (0 outside of instances)
+	public long getInstanceKey() {
+		return instanceKey;
+	}
+	
+	public Hit setInstanceKey(long instanceKey) {
+		this.instanceKey = instanceKey;
+		return this;
+	}
+	
 	//checks if the intersection was occurred inside the surface (for refraction)
 	public boolean isWithinTheSurface() {
 		return isWithin;
@@ -13,7 +13,7 @@ public class Ops {
 	}
 	
 	public static Vec mult(double a, Vec v) {
-		return mult(new Vec(a), v);
+		return new Vec(a*v.x, a*v.y, a*v.z);
 	}
 	
 	public static Vec mult(Vec u, Vec v) {
@@ -21,7 +21,7 @@ public class Ops {
 	}
 	
 	public static Point mult(double a, Point p) {
-		return mult(new Point(a), p);
+		return new Point(a*p.x, a*p.y, a*p.z);
 	}
 	
 	public static Point mult(Point p1, Point p2) {
@@ -45,7 +45,7 @@ public class Ops {
 	}
 	
 	public static double dist(Point p1, Point p2) {
-		return length(sub(p1, p2));
+		return Math.sqrt(distSqr(p1, p2));
 	}
 
 	public static double distSqr(Point p, Ray r) {
@@ -58,7 +58,8 @@ public class Ops {
 	}
 	
 	public static double distSqr(Point p1, Point p2) {
-		return lengthSqr(sub(p1, p2));
+		double dx = p1.x-p2.x, dy = p1.y-p2.y, dz = p1.z-p2.z;
+		return dx*dx + dy*dy + dz*dz;
 	}
 	
 	public static Vec normalize(Vec v) {
@@ -66,7 +67,7 @@ public class Ops {
 	}
 	
 	public static Vec neg(Vec v) {
-		return mult(-1, v);
+		return new Vec(-v.x, -v.y, -v.z);
 	}
 	
 	public static Vec add(Vec u, Vec v) {
@@ -87,7 +88,7 @@ public class Ops {
 	
 	public static Point add(Point p, double t, Vec v) {
 		//returns p + tv;
-		return add(p, mult(t, v));
+		return new Point(p.x + t*v.x, p.y + t*v.y, p.z + t*v.z);
 	}
 	
 	public static Vec sub(Point p1, Point p2) {
@@ -103,7 +104,7 @@ public class Ops {
 	}
 	
 	public static Vec reflect(Vec u, Vec normal) {
-		return add(u, mult(-2*dot(u, normal), normal));
+		return new Vec().setReflect(u, normal);
 	}
 	
 	public static Vec refract(Vec u, Vec normal, double n1, double n2) {
@@ -112,8 +113,8 @@ public class Ops {
 		if(n1 == n2)
 			return u;
 		
-		double dot = dot(neg(u), normal);
-		dot *= dot;
+		double cosTheta1 = -dot(u, normal);
+		double dot = cosTheta1 * cosTheta1;
 		if(n1 > n2) {
 			double criticalAngle = n2 / n1;
 			criticalAngle *= criticalAngle;
@@ -121,12 +122,12 @@ public class Ops {
 				return reflect(u, normal);
 		}
 		
-		Vec b = add(u, mult(dot(neg(u), normal), normal));
-		b = normalize(b);
+		//b = the normalized component of u which is perpendicular to the normal
+		Vec b = new Vec(u).addInPlace(cosTheta1, normal).normalizeInPlace();
 		double sin2Theta2 = (n1 * n1 * (1-dot)) / (n2*n2);
 		double cos2Theta2 = 1 - sin2Theta2;
 		double sinTheta2 = Math.sqrt(sin2Theta2);
 		double cosTheta2 = Math.sqrt(cos2Theta2);
-		return add(mult(-cosTheta2, normal), mult(sinTheta2, b));
+		return b.scaleInPlace(sinTheta2).addInPlace(-cosTheta2, normal);
 	}
 }
@@ -57,6 +57,30 @@ public class Point {
 		return Ops.isFinite(this);
 	}
 	
+	//MARK: in-place operations
+	//The following methods change this point and return it, so they can be chained without allocating new points.
+	
+	public Point set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+	
+	public Point set(Point p) {
+		return set(p.x, p.y, p.z);
+	}
+	
+	// this = p + t * v
+	public Point setAdd(Point p, double t, Vec v) {
+		return set(p.x + t*v.x, p.y + t*v.y, p.z + t*v.z);
+	}
+	
+	// this += t * v
+	public Point addInPlace(double t, Vec v) {
+		return setAdd(this, t, v);
+	}
+	
 	public double[] asArray() {
 		double ret[] = new double[3];
 		ret[0] = x;
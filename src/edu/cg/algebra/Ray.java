@@ -3,6 +3,7 @@ package edu.cg.algebra;
 public class Ray {
 	private final Point source;
 	private final Vec direction;
+	private Vec inverseDirection = null;
 	
 	public Ray(Point source, Vec direction) {
 		this.source = source;
@@ -10,7 +11,9 @@ public class Ray {
 	}
 	
 	public Ray(Point p0, Point p1) {
-		this(p0, p1.sub(p0).normalize());
+		//the direction is normalized once here instead of again in Ray(Point, Vec)
+		this.source = p0;
+		this.direction = new Vec().setSub(p1, p0).normalizeInPlace();
 	}
 	
 	public Point source() {
@@ -21,6 +24,16 @@ public class Ray {
 		return direction;
 	}
 	
+	/**
+	 * Returns the component-wise inverse of the direction (1/x, 1/y, 1/z), used by slab tests.
+	 * Zero components are inverted to signed infinity. The vector is computed once and must not be changed.
+	 */
+	public Vec inverseDirection() {
+		if(inverseDirection == null)
+			inverseDirection = new Vec(1.0 / direction.x, 1.0 / direction.y, 1.0 / direction.z);
+		return inverseDirection;
+	}
+	
 	public Point add(double t) {
 		// returns: p0 + t * direction
 		return source.add(t, direction);
@@ -0,0 +1,86 @@
+package edu.cg.algebra;
+
+/**
+ * A group of rays sharing the same source point (e.g. the primary rays of neighbouring pixels),
+ * stored in structure-of-arrays form so shapes can intersect all of them in tight loops.
+ * For each ray the packet keeps the closest hit found so far: its distance and the id of the hit object.
+ */
+public class RayPacket {
+	public final int capacity;
+	public int size = 0;
+
+	//the shared source of the rays
+	public double ox, oy, oz;
+	//the normalized directions of the rays and their component-wise inverse
+	public final double[] dx, dy, dz;
+	public final double[] ix, iy, iz;
+	//the closest hit of each ray: its distance (positive infinity if none) and the id of the object (-1 if none)
+	public final double[] t;
+	public final int[] hitId;
+
+	private Point source;
+	private final Point[] targets;
+
+	public RayPacket(int capacity) {
+		this.capacity = capacity;
+		dx = new double[capacity];
+		dy = new double[capacity];
+		dz = new double[capacity];
+		ix = new double[capacity];
+		iy = new double[capacity];
+		iz = new double[capacity];
+		t = new double[capacity];
+		hitId = new int[capacity];
+		targets = new Point[capacity];
+	}
+
+	/**
+	 * Empties the packet and sets the source of the rays that will be added.
+	 */
+	public void reset(Point source) {
+		this.source = source;
+		ox = source.x;
+		oy = source.y;
+		oz = source.z;
+		size = 0;
+	}
+
+	/**
+	 * Adds the ray from the source of the packet towards the given point.
+	 * The direction is computed exactly like Ray(Point, Point) does.
+	 * @return the index of the ray in the packet
+	 */
+	public int add(Point target) {
+		int i = size++;
+		double x = target.x - ox, y = target.y - oy, z = target.z - oz;
+		double inv = 1.0 / Math.sqrt(x*x + y*y + z*z);
+		dx[i] = inv * x;
+		dy[i] = inv * y;
+		dz[i] = inv * z;
+		ix[i] = 1.0 / dx[i];
+		iy[i] = 1.0 / dy[i];
+		iz[i] = 1.0 / dz[i];
+		t[i] = Double.POSITIVE_INFINITY;
+		hitId[i] = -1;
+		targets[i] = target;
+		return i;
+	}
+
+	/**
+	 * Records a hit of the i-th ray if it is closer than the closest hit found so far.
+	 * Equally distant hits are resolved in favor of the smaller id.
+	 */
+	public void record(int i, double hitT, int id) {
+		if(hitT < t[i] || (hitT == t[i] && id < hitId[i])) {
+			t[i] = hitT;
+			hitId[i] = id;
+		}
+	}
+
+	/**
+	 * @return the i-th ray as a Ray object (with exactly the same direction).
+	 */
+	public Ray ray(int i) {
+		return new Ray(source, targets[i]);
+	}
+}
@@ -71,6 +71,74 @@ public class Vec {
 		return Ops.isFinite(this);
 	}
 	
+	//MARK: in-place operations
+	//The following methods change this vector and return it, so they can be chained without allocating new vectors.
+	
+	public Vec set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+	
+	public Vec set(Vec v) {
+		return set(v.x, v.y, v.z);
+	}
+	
+	// this = u + v
+	public Vec setAdd(Vec u, Vec v) {
+		return set(u.x + v.x, u.y + v.y, u.z + v.z);
+	}
+	
+	// this = u - v
+	public Vec setSub(Vec u, Vec v) {
+		return set(u.x - v.x, u.y - v.y, u.z - v.z);
+	}
+	
+	// this = p1 - p2
+	public Vec setSub(Point p1, Point p2) {
+		return set(p1.x - p2.x, p1.y - p2.y, p1.z - p2.z);
+	}
+	
+	// this = u x v
+	public Vec setCross(Vec u, Vec v) {
+		return set(u.y*v.z - u.z*v.y, u.z*v.x - u.x*v.z, u.x*v.y - u.y*v.x);
+	}
+	
+	// this = u reflected about the normal
+	public Vec setReflect(Vec u, Vec normal) {
+		double a = -2 * Ops.dot(u, normal);
+		return set(u.x + a*normal.x, u.y + a*normal.y, u.z + a*normal.z);
+	}
+	
+	// this += v
+	public Vec addInPlace(Vec v) {
+		return set(x + v.x, y + v.y, z + v.z);
+	}
+	
+	// this += t * v
+	public Vec addInPlace(double t, Vec v) {
+		return set(x + t*v.x, y + t*v.y, z + t*v.z);
+	}
+	
+	// this *= a
+	public Vec scaleInPlace(double a) {
+		return set(a*x, a*y, a*z);
+	}
+	
+	// this *= v (component-wise)
+	public Vec multInPlace(Vec v) {
+		return set(x*v.x, y*v.y, z*v.z);
+	}
+	
+	public Vec negInPlace() {
+		return set(-x, -y, -z);
+	}
+	
+	public Vec normalizeInPlace() {
+		return scaleInPlace(1.0 / norm());
+	}
+	
 	public Color toColor() {
 		return new Color(clip(x), clip(y), clip(z));
 	}
@@ -17,8 +17,8 @@ import edu.cg.scene.objects.Shape;
 
 public class GsonMaker<T>  implements JsonSerializer<T>, JsonDeserializer<T> {
 
-	private static final String CLASSNAME = "CLASSNAME";
-	private static final String DATA = "DATA";
+	static final String CLASSNAME = "CLASSNAME";
+	static final String DATA = "DATA";
 
 	public T deserialize(JsonElement jsonElement, Type type,
 			JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
@@ -17,12 +17,15 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
 @SuppressWarnings("serial")
 public class ImageWindow extends JFrame {
 	private MenuWindow menuWindow;
 	private BufferedImage img;
+	private String title;
+	private JPanel panelImage;
 
 	/**
 	 * Create the window.
@@ -32,6 +35,7 @@ public class ImageWindow extends JFrame {
 		
 		this.img = img;
 		this.menuWindow = menuWindow;
+		this.title = title;
 		
 		setTitle(title);
 		JPanel contentPane = new JPanel();
@@ -49,7 +53,7 @@ public class ImageWindow extends JFrame {
 		});
 		contentPane.add(btnSaveAs, BorderLayout.NORTH);
 		
-		JPanel panelImage = new ImagePanel();
+		panelImage = new ImagePanel();
 		contentPane.add(panelImage, BorderLayout.CENTER);
 		
 		pack();
@@ -66,6 +70,19 @@ public class ImageWindow extends JFrame {
 		}
 	}
 	
+	/**
+	 * Repaints the image after it has been changed by a rendering pass (used for live previews).
+	 * May be called from any thread.
+	 * @param pass - the number of the pass which has been completed
+	 * @param passesCount - the total number of passes
+	 */
+	public void imageUpdated(int pass, int passesCount) {
+		SwingUtilities.invokeLater(() -> {
+			setTitle(pass < passesCount ? title + " (preview " + pass + "/" + passesCount + ")" : title);
+			panelImage.repaint();
+		});
+	}
+	
 	private void save(File file) {
 		try {
 			ImageIO.write(img, "png", file);
@@ -3,16 +3,21 @@ package edu.cg.menu;
 import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
 import edu.cg.Logger;
 import edu.cg.menu.components.ScenesCreator;
 import edu.cg.menu.components.ScenesPicker;
+import edu.cg.scene.RenderJob;
+import edu.cg.scene.RenderObserver;
 import edu.cg.scene.Scene;
 import edu.cg.menu.components.LogField;
 import edu.cg.menu.components.RenderingParametersSelector;
@@ -21,6 +26,9 @@ import edu.cg.menu.components.RenderingParametersSelector;
 public class MenuWindow extends JFrame implements Logger {
 	//MARK: fields
 	private Scene scene = null;
+	private RenderJob renderJob = null;
+	private final RenderCache renderCache = new RenderCache(new File(RenderCache.DEFAULT_DIRECTORY),
+			RenderCache.DEFAULT_MAX_BYTES);
 	
 	//MARK: GUI fields
 	private ScenesPicker scenesPicker;
@@ -28,6 +36,7 @@ public class MenuWindow extends JFrame implements Logger {
 	private RenderingParametersSelector renderingParametersSelector;
 	private LogField logField;
 	private JButton btnRender;
+	private JButton btnCancel;
 	
 	public MenuWindow() {
 		super();
@@ -58,18 +67,21 @@ public class MenuWindow extends JFrame implements Logger {
 			if(!renderingParametersSelector.readParameters(scene, MenuWindow.this))
 				return;
 			
-			try {
-				BufferedImage img = scene.render(width, height, viewPlainWidth,MenuWindow.this);
-				present(img);
-			} catch(Exception ex) {
-				String msg = "Couldn't render " + scene.getName() + System.lineSeparator() + 
-						"Exception message: " + ex.getMessage();
-				log(msg);
-				JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE);
-			}
+			render(width, height, viewPlainWidth);
+		});
+		
+		btnCancel = new JButton("Cancel rendering");
+		btnCancel.setEnabled(false);
+		btnCancel.addActionListener((e) -> {
+			if(renderJob != null)
+				renderJob.cancel(false);
 		});
 		
-		renderingParametersSelector.add(btnRender);
+		JPanel buttonsPanel = new JPanel();
+		buttonsPanel.setLayout(new GridLayout(1, 0, 5, 0));
+		buttonsPanel.add(btnRender);
+		buttonsPanel.add(btnCancel);
+		renderingParametersSelector.add(buttonsPanel);
 		logField = new LogField();
 		
 		JPanel panel1 = new JPanel();
@@ -90,14 +102,91 @@ public class MenuWindow extends JFrame implements Logger {
 	}
 	
 	public void setScene(Scene scene) {
+		//a scene loaded again after editing its lights or materials is relit from the hits of the last render,
+		//the hits are used only if the camera and the geometry are the same
+		if(this.scene != null && renderJob == null)
+			scene.initRelighting(this.scene.isRelighting()).initGBufferOf(this.scene);
 		this.scene = scene;
-		btnRender.setEnabled(true);
+		btnRender.setEnabled(renderJob == null);
 		renderingParametersSelector.writeParameters(scene);
 		log(scene.getName() + " has been selected.");
 	}
 	
-	public void present(BufferedImage img) {
-		new ImageWindow(img, scene.getName(), this).setVisible(true);
+	public void present(BufferedImage img, String title) {
+		new ImageWindow(img, title, this).setVisible(true);
+	}
+	
+	/**
+	 * Renders the scene in the background, so the window (and the log) stays responsive
+	 * and the render can be cancelled.
+	 * Progressive renders present the image after the first (coarse) pass, and the window is
+	 * repainted after every following pass. Other renders present the image once it is completed.
+	 * Renders that are in the render cache are presented once they are read, without tracing. The cache key
+	 * (a hash of the whole scene) and the cache lookup are computed on the background thread too.
+	 */
+	private void render(int width, int height, double viewPlainWidth) {
+		Scene scene = this.scene;
+		String[] cacheKey = { null };
+		ImageWindow[] preview = { null };
+		scene.initRenderObserver(!scene.isProgressive() ? null : new RenderObserver() {
+			@Override
+			public void frameUpdated(BufferedImage img, int pass, int passesCount) {
+				SwingUtilities.invokeLater(() -> {
+					if(preview[0] == null) {
+						preview[0] = new ImageWindow(img, scene.getName(), MenuWindow.this);
+						preview[0].setVisible(true);
+					}
+					preview[0].imageUpdated(pass, passesCount);
+				});
+			}
+		});
+		
+		btnRender.setEnabled(false);
+		btnCancel.setEnabled(true);
+		renderJob = scene.renderInBackground(width, height, viewPlainWidth, this, () -> {
+			cacheKey[0] = RenderCache.key(scene, width, height, viewPlainWidth);
+			return renderCache.get(cacheKey[0], this);
+		}, job -> {
+			cache(job, cacheKey[0]);
+			SwingUtilities.invokeLater(() -> renderDone(job, scene, preview[0] != null));
+		});
+	}
+	
+	/**
+	 * Stores the image of a completed render in the render cache. Invoked on the background thread,
+	 * so the window isn't blocked while the image is encoded. Images read from the cache aren't stored again.
+	 */
+	private void cache(RenderJob job, String cacheKey) {
+		if(job.isCancelled() || job.isLookedUp() || cacheKey == null)
+			return;
+		try {
+			renderCache.put(cacheKey, job.get(), this);
+		} catch(InterruptedException | ExecutionException e) {
+			//failed renders are reported by renderDone
+		}
+	}
+	
+	private void renderDone(RenderJob job, Scene scene, boolean presented) {
+		scene.initRenderObserver(null);
+		renderJob = null;
+		btnRender.setEnabled(this.scene != null);
+		btnCancel.setEnabled(false);
+		if(job.isCancelled()) {
+			log("Rendering of " + scene.getName() + " has been cancelled.");
+			return;
+		}
+		
+		try {
+			BufferedImage img = job.get();
+			if(!presented)
+				present(img, scene.getName());
+		} catch(InterruptedException | ExecutionException ex) {
+			Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+			String msg = "Couldn't render " + scene.getName() + System.lineSeparator() + 
+					"Exception message: " + cause.getMessage();
+			log(msg);
+			JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE);
+		}
 	}
 	
 	//MARK: Logger
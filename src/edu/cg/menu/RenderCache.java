@@ -0,0 +1,164 @@
+package edu.cg.menu;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import edu.cg.Logger;
+import edu.cg.scene.Scene;
+
+/**
+ * An on disk cache of rendered images, keyed by a SHA-256 hash of the scene description and of the
+ * render parameters, so rendering the same scene with the same parameters again returns the stored image
+ * without tracing any ray. The cache directory may be shared by several processes.
+ * The cache is bounded by the total size of its images: once it gets larger, the least recently used
+ * images are evicted (images are touched when they are read).
+ */
+public class RenderCache {
+	public static final String DEFAULT_DIRECTORY = "cache";
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	//part of each key, change it whenever a change of the renderer changes the rendered images
+	private static final String VERSION = "1";
+	private static final String EXTENSION = ".png";
+
+	private final File directory;
+	private final long maxBytes;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param directory - the directory of the cached images, created if it doesn't exist
+	 * @param maxBytes - the maximal total size of the cached images
+	 */
+	public RenderCache(File directory, long maxBytes) {
+		if(maxBytes <= 0)
+			throw new IllegalArgumentException("Cache size must be positive");
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Computes the key of a render: a hash of the scene description (camera, lights, surfaces, materials,
+	 * anti aliasing, recursion level and the reflections and refractions flags), of the image size and of the
+	 * rendering options that change the rendered pixels. Options that only change the speed of the render
+	 * (like the tile size and the threads count) aren't part of the key.
+	 */
+	public static String key(Scene scene, int imgWidth, int imgHeight, double viewPlainWidth) {
+		JsonObject description = GsonMaker.getInstance().toJsonTree(scene).getAsJsonObject();
+		//the resolution of the camera is left from its last render, the image size is hashed instead
+		JsonElement camera = description.get("camera");
+		if(camera != null && camera.isJsonObject())
+			for(String field : new String[] {"Rx", "Ry", "viewPlainWidth"})
+				camera.getAsJsonObject().remove(field);
+
+		String text = VERSION + "\n" + description + "\n" + imgWidth + "x" + imgHeight + "\n" + viewPlainWidth +
+				"\n" + scene.getAdaptiveThreshold() + "\n" + scene.getContributionThreshold() + "\n" + scene.getLightCutoff() +
+				"\n" + scene.getLightSamples();
+		try {
+			StringBuilder key = new StringBuilder();
+			for(byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)))
+				key.append(String.format("%02x", b));
+			return key.toString();
+		} catch(NoSuchAlgorithmException e) {
+			//every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the cached image of the key, or null if there is none.
+	 */
+	public synchronized BufferedImage get(String key, Logger logger) {
+		File file = new File(directory, key + EXTENSION);
+		BufferedImage img = null;
+		try {
+			if(file.isFile())
+				img = ImageIO.read(file);
+		} catch(IOException e) {
+			logger.log("Couldn't read the cached render " + file + ": " + e.getMessage());
+		}
+		if(img == null) {
+			++misses;
+			logger.log("Render cache miss (" + key.substring(0, 12) + "), " + hits + " hits and " + misses + " misses so far.");
+			return null;
+		}
+
+		++hits;
+		file.setLastModified(System.currentTimeMillis());
+		logger.log("Render cache hit (" + key.substring(0, 12) + "), " + hits + " hits and " + misses + " misses so far.");
+		return img;
+	}
+
+	/**
+	 * Stores the image of the key, and evicts the least recently used images if the cache got too large.
+	 * Failures are logged and otherwise ignored, since the image itself is fine.
+	 */
+	public synchronized void put(String key, BufferedImage img, Logger logger) {
+		try {
+			Files.createDirectories(directory.toPath());
+			//written to a temporary file first, so other processes never read a partial image
+			Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+			try {
+				ImageIO.write(img, "png", temp.toFile());
+				Files.move(temp, new File(directory, key + EXTENSION).toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			evict(logger);
+		} catch(IOException e) {
+			logger.log("Couldn't store the render in the cache: " + e.getMessage());
+		}
+	}
+
+	private void evict(Logger logger) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if(files == null)
+			return;
+		long[] lastUsed = new long[files.length];
+		long size = 0;
+		for(int i = 0; i < files.length; ++i) {
+			size += files[i].length();
+			lastUsed[i] = files[i].lastModified();
+		}
+		if(size <= maxBytes)
+			return;
+
+		Integer[] order = new Integer[files.length];
+		for(int i = 0; i < order.length; ++i)
+			order[i] = i;
+		Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+		int evicted = 0;
+		for(int i = 0; i < order.length && size > maxBytes; ++i) {
+			File file = files[order[i]];
+			long length = file.length();
+			if(file.delete()) {
+				size -= length;
+				++evicted;
+			}
+		}
+		logger.log("Evicted " + evicted + " renders from the cache, " + size / 1024 + " KB left.");
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
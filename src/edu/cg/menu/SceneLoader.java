@@ -0,0 +1,234 @@
+package edu.cg.menu;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import edu.cg.Logger;
+import edu.cg.scene.BinaryScene;
+import edu.cg.scene.Scene;
+import edu.cg.scene.lightSources.DirectionalLight;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Instance;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Loads scene files (in the format written by GsonMaker) while streaming them.
+ * The surfaces, groups and light sources are read one by one straight from the file into their objects,
+ * so the JSON tree of the whole scene is never built. Only the other (small) fields of the scene
+ * are collected into a tree, which is then converted by Gson.
+ * Shapes and light sources are read by a fixed table from their class names to their adapters.
+ * Binary scene files (see BinaryScene) are recognized by their extension and read through a memory mapping.
+ */
+public class SceneLoader {
+	private final Gson gson = GsonMaker.getInstance();
+	private final Map<String, TypeAdapter<? extends Shape>> shapeAdapters = new HashMap<>();
+	private final Map<String, TypeAdapter<? extends Light>> lightAdapters = new HashMap<>();
+	private final TypeAdapter<Material> materialAdapter = gson.getAdapter(Material.class);
+	private final TypeAdapter<JsonElement> treeAdapter = gson.getAdapter(JsonElement.class);
+
+	private long loadMillis = 0;
+	private long peakHeapBytes = 0;
+	private int surfacesCount = 0;
+	private int groupsCount = 0;
+	private int lightsCount = 0;
+
+	public SceneLoader() {
+		addShape(Sphere.class);
+		addShape(Plain.class);
+		addShape(AxisAlignedBox.class);
+		addShape(Instance.class);
+		addLight(DirectionalLight.class);
+		addLight(PointLight.class);
+		addLight(Spotlight.class);
+	}
+
+	private void addShape(Class<? extends Shape> shapeClass) {
+		shapeAdapters.put(shapeClass.getName(), gson.getAdapter(shapeClass));
+	}
+
+	private void addLight(Class<? extends Light> lightClass) {
+		lightAdapters.put(lightClass.getName(), gson.getAdapter(lightClass));
+	}
+
+	/**
+	 * Loads a scene file, either a JSON file or a binary scene file.
+	 * @param filename - the path of the scene file
+	 * @param logger - reports the load time and the peak heap usage
+	 * @return the loaded scene
+	 * @throws IOException if the file can't be read
+	 * @throws JsonParseException if the file isn't a valid scene file
+	 */
+	public Scene load(String filename, Logger logger) throws IOException {
+		List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if(pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		long start = System.currentTimeMillis();
+
+		Scene scene;
+		String contents;
+		if(filename.endsWith(BinaryScene.EXTENSION)) {
+			scene = BinaryScene.read(Paths.get(filename));
+			contents = "binary scene file";
+		} else {
+			scene = readJson(filename);
+			contents = surfacesCount + " surfaces, " + groupsCount + " groups, " + lightsCount + " light sources";
+		}
+
+		loadMillis = System.currentTimeMillis() - start;
+		peakHeapBytes = 0;
+		for(MemoryPoolMXBean pool : heapPools)
+			peakHeapBytes += pool.getPeakUsage().getUsed();
+		logger.log("Loaded " + scene.getName() + " (" + contents + ") in " + loadMillis + " ms, peak heap usage " +
+				String.format("%.1f", peakHeapBytes / (1024.0 * 1024)) + " MB.");
+		return scene;
+	}
+
+	public long getLoadMillis() {
+		return loadMillis;
+	}
+
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+
+	private Scene readJson(String filename) throws IOException {
+		JsonObject fields = new JsonObject();
+		List<Surface> surfaces = new ArrayList<>();
+		Map<String, List<Surface>> groups = new LinkedHashMap<>();
+		List<Light> lights = new ArrayList<>();
+		surfacesCount = 0;
+		try(JsonReader reader = new JsonReader(Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8))) {
+			reader.beginObject();
+			while(reader.hasNext()) {
+				String name = reader.nextName();
+				if(reader.peek() == JsonToken.NULL) {
+					reader.nextNull();
+					continue;
+				}
+				switch(name) {
+				case "surfaces":
+					readSurfaces(reader, surfaces);
+					break;
+				case "groups":
+					reader.beginObject();
+					while(reader.hasNext()) {
+						String group = reader.nextName();
+						List<Surface> groupSurfaces = new ArrayList<>();
+						readSurfaces(reader, groupSurfaces);
+						groups.put(group, groupSurfaces);
+					}
+					reader.endObject();
+					break;
+				case "lightSources":
+					reader.beginArray();
+					while(reader.hasNext())
+						lights.add(readPolymorphic(reader, lightAdapters));
+					reader.endArray();
+					break;
+				default:
+					fields.add(name, treeAdapter.read(reader));
+				}
+			}
+			reader.endObject();
+		}
+
+		Scene scene = gson.fromJson(fields, Scene.class);
+		for(Light light : lights)
+			scene.addLightSource(light);
+		for(Surface surface : surfaces)
+			scene.addSurface(surface);
+		for(Map.Entry<String, List<Surface>> group : groups.entrySet())
+			scene.addGroup(group.getKey(), group.getValue());
+		groupsCount = groups.size();
+		lightsCount = lights.size();
+		return scene;
+	}
+
+	private void readSurfaces(JsonReader reader, List<Surface> surfaces) throws IOException {
+		reader.beginArray();
+		while(reader.hasNext()) {
+			Shape shape = null;
+			Material material = null;
+			reader.beginObject();
+			while(reader.hasNext()) {
+				String name = reader.nextName();
+				if(reader.peek() == JsonToken.NULL)
+					reader.nextNull();
+				else if(name.equals("shape"))
+					shape = readPolymorphic(reader, shapeAdapters);
+				else if(name.equals("material"))
+					material = materialAdapter.read(reader);
+				else
+					reader.skipValue();
+			}
+			reader.endObject();
+			surfaces.add(new Surface(shape, material));
+			++surfacesCount;
+		}
+		reader.endArray();
+	}
+
+	/**
+	 * Reads an object written by GsonMaker: its class name and its data.
+	 * The data is read straight into the object, unless it comes before the class name.
+	 */
+	private <T> T readPolymorphic(JsonReader reader, Map<String, TypeAdapter<? extends T>> adapters) throws IOException {
+		String className = null;
+		T value = null;
+		JsonElement data = null;
+		reader.beginObject();
+		while(reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals(GsonMaker.CLASSNAME))
+				className = reader.nextString();
+			else if(name.equals(GsonMaker.DATA) && className != null)
+				value = adapter(adapters, className).read(reader);
+			else if(name.equals(GsonMaker.DATA))
+				data = treeAdapter.read(reader);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		if(className == null)
+			throw new JsonParseException("Missing " + GsonMaker.CLASSNAME + " at " + reader.getPath());
+		if(value == null && data != null)
+			value = adapter(adapters, className).fromJsonTree(data);
+		return value;
+	}
+
+	private static <T> TypeAdapter<? extends T> adapter(Map<String, TypeAdapter<? extends T>> adapters, String className) {
+		TypeAdapter<? extends T> adapter = adapters.get(className);
+		if(adapter == null)
+			throw new JsonParseException("Unknown class: " + className);
+		return adapter;
+	}
+}
@@ -7,6 +7,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EtchedBorder;
 
 import edu.cg.Logger;
@@ -43,7 +44,11 @@ public class LogField extends JPanel implements Logger {
 		String ss = convertTime(cal.get(Calendar.SECOND));
 		String time = "[" + hh + ":" + mm + ":" + ss + "] ~ ";
 		String msg = time + s + System.lineSeparator();
-		txtLog.append(msg);
+		//renders log from background threads, the text area must only be changed by the event thread
+		if(SwingUtilities.isEventDispatchThread())
+			txtLog.append(msg);
+		else
+			SwingUtilities.invokeLater(() -> txtLog.append(msg));
 	}
 	
 	private static String convertTime(int t) {
@@ -30,6 +30,8 @@ public class RenderingParametersSelector extends JPanel {
 	
 	private Checkbox reflection;
 	private Checkbox refraction;
+	private Checkbox progressive;
+	private Checkbox relighting;
 	
 	public RenderingParametersSelector() {
 		super();
@@ -84,9 +86,19 @@ public class RenderingParametersSelector extends JPanel {
 		refraction = new Checkbox("Render refractions");
 		refraction.setFont(myFont);
 		
+		progressive = new Checkbox("Progressive preview");
+		progressive.setFont(myFont);
+		
+		relighting = new Checkbox("Keep hits for relighting");
+		relighting.setFont(myFont);
+		
 		panel2.add(reflection);
 		
 		panel2.add(refraction);
+		
+		panel2.add(progressive);
+		
+		panel2.add(relighting);
 	}
 	
 	private JFormattedTextField addAndGetTextField(String label, int value, JPanel panel) {
@@ -170,7 +182,9 @@ public class RenderingParametersSelector extends JPanel {
 			scene.initAntiAliasingFactor(3);
 
 		scene.initRenderRefarctions(refraction.getState())
-		.initRenderReflections(reflection.getState());
+		.initRenderReflections(reflection.getState())
+		.initProgressive(progressive.getState())
+		.initRelighting(relighting.getState());
 		
 		return true;
 	}
@@ -191,5 +205,7 @@ public class RenderingParametersSelector extends JPanel {
 		recursionLevel.setValue(scene.getMaxRecursionLevel());
 		refraction.setState(scene.getRenderRefractions());
 		reflection.setState(scene.getRenderReflections());
+		progressive.setState(scene.isProgressive());
+		relighting.setState(scene.isRelighting());
 	}
 }
@@ -1,8 +1,5 @@
 package edu.cg.menu.components;
 
-import java.nio.file.Files;
-import java.nio.file.Paths;
-
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
@@ -10,10 +7,9 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.border.EtchedBorder;
-import com.google.gson.Gson;
 
-import edu.cg.menu.GsonMaker;
 import edu.cg.menu.MenuWindow;
+import edu.cg.menu.SceneLoader;
 import edu.cg.scene.Scene;
 
 @SuppressWarnings("serial")
@@ -50,12 +46,10 @@ public class ScenesPicker extends JPanel {
 	public void open(String filename) {
 		txtFilename.setText(filename);
 		try {
-			Gson gson = GsonMaker.getInstance();	
-			String scene1Json = new String(Files.readAllBytes(Paths.get(filename)));
-			Scene scene = gson.fromJson(scene1Json, Scene.class);
+			Scene scene = new SceneLoader().load(filename, menuWindow);
 			menuWindow.setScene(scene);
 		} catch(Exception e) {
-			String msg = "Can't open scene!";
+			String msg = "Can't open scene! " + e.getMessage();
 			menuWindow.log(msg);
 			JOptionPane.showMessageDialog(menuWindow, msg, "Error", JOptionPane.ERROR_MESSAGE);
 		}
@@ -0,0 +1,443 @@
+package edu.cg.scene;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.camera.PinholeCamera;
+import edu.cg.scene.lightSources.DirectionalLight;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A compact binary scene file, for large static scenes which are rendered many times.
+ * The file is read through a memory mapped buffer, so loading it involves no parsing: the tables
+ * are read in place from the mapped pages. The shapes are copied straight into the primitive arrays of
+ * a CompiledScene, which the scene is rendered with instead of compiling its surfaces. The objects of the
+ * scene (Surface, the shape, Material, the light) are still created, for the hits of the render and
+ * everything else that reads the scene, e.g. writing it as JSON.
+ * Every count is checked against the size of the file, so a corrupt file fails with an IOException.
+ * Only spheres, plains and axis aligned boxes can be written: scenes with groups (and instances of them)
+ * are rejected by write.
+ *
+ * The layout (little endian, every block starts at a multiple of 8 bytes):
+ * header:     magic, version, max recursion level, anti aliasing factor, flags, the counts of the
+ *             lights, materials, surfaces, spheres, plains and boxes and a reserved int, the ambient and
+ *             background colors (doubles), the length of the name and the name (UTF-8)
+ * camera:     position, towards vector, up vector, right vector and distance to plain (doubles). The vectors
+ *             are the normalized vectors of the camera, which are restored as they are.
+ * lights:     the type of each light (ints), then per light: intensity, position, direction
+ *             and the decay factors kq, kl, kc (doubles)
+ * materials:  per material: Ka, Kd, Ks, reflection intensity, shininess, transparency,
+ *             refraction intensity and refraction index (doubles)
+ * surfaces:   the shape type of each surface in the scene order, then the material of each surface (ints)
+ * spheres:    center and radius per sphere (doubles)
+ * plains:     a, b, c and d per plain (doubles)
+ * boxes:      min point and max point per box (doubles)
+ */
+public class BinaryScene {
+	public static final String EXTENSION = ".cgscene";
+
+	private static final int MAGIC = 0x43534743; //"CGSC"
+	private static final int VERSION = 2;
+	private static final int HEADER_INTS = 12;
+
+	private static final int FLAG_REFRACTIONS = 1;
+	private static final int FLAG_REFLECTIONS = 2;
+	private static final int FLAG_CAMERA = 4;
+
+	private static final int DIRECTIONAL_LIGHT = 0;
+	private static final int POINT_LIGHT = 1;
+	private static final int SPOTLIGHT = 2;
+
+	private static final int SPHERE = 0;
+	private static final int PLAIN = 1;
+	private static final int BOX = 2;
+
+	private static final int CAMERA_DOUBLES = 13;
+	private static final int LIGHT_DOUBLES = 12;
+	private static final int MATERIAL_DOUBLES = 14;
+	private static final int SPHERE_DOUBLES = 4;
+	private static final int PLAIN_DOUBLES = 4;
+	private static final int BOX_DOUBLES = 6;
+
+	private BinaryScene() {
+	}
+
+	/**
+	 * Writes the description of the scene (not its rendering options) as a binary scene file.
+	 * @param scene - the scene to write
+	 * @param path - the path of the file
+	 * @throws IllegalArgumentException if the scene has shapes other than spheres, plains and boxes
+	 */
+	public static void write(Scene scene, Path path) throws IOException {
+		if(!scene.getGroups().isEmpty())
+			throw new IllegalArgumentException("Scenes with groups can't be written as binary scene files");
+		List<Light> lights = scene.getLightSources();
+		List<Surface> surfaces = scene.getSurfaces();
+
+		Map<Material, Integer> materialsTable = new IdentityHashMap<>();
+		int spheresCount = 0, plainsCount = 0, boxesCount = 0;
+		for(Surface surface : surfaces) {
+			int type = shapeType(surface.shape());
+			if(type == SPHERE)
+				++spheresCount;
+			else if(type == PLAIN)
+				++plainsCount;
+			else
+				++boxesCount;
+			materialsTable.putIfAbsent(surface.material(), materialsTable.size());
+		}
+		Material[] materials = new Material[materialsTable.size()];
+		for(Map.Entry<Material, Integer> entry : materialsTable.entrySet())
+			materials[entry.getValue()] = entry.getKey();
+
+		byte[] name = scene.getName().getBytes(StandardCharsets.UTF_8);
+		int size = align(4 * HEADER_INTS + 8 * 6 + 4 + name.length) +
+				8 * CAMERA_DOUBLES +
+				align(4 * lights.size()) + 8 * LIGHT_DOUBLES * lights.size() +
+				8 * MATERIAL_DOUBLES * materials.length +
+				align(4 * 2 * surfaces.size()) +
+				8 * (SPHERE_DOUBLES * spheresCount + PLAIN_DOUBLES * plainsCount + BOX_DOUBLES * boxesCount);
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+		//MARK: header
+		PinholeCamera camera = scene.getCamera();
+		int flags = (scene.getRenderRefractions() ? FLAG_REFRACTIONS : 0) |
+				(scene.getRenderReflections() ? FLAG_REFLECTIONS : 0) |
+				(camera != null ? FLAG_CAMERA : 0);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(scene.getMaxRecursionLevel()).putInt(scene.getFactor())
+				.putInt(flags).putInt(lights.size()).putInt(materials.length).putInt(surfaces.size())
+				.putInt(spheresCount).putInt(plainsCount).putInt(boxesCount).putInt(0);
+		putVec(buffer, scene.getAmbient());
+		putVec(buffer, scene.getBackgroundColor());
+		buffer.putInt(name.length).put(name);
+		pad(buffer);
+
+		//MARK: camera
+		if(camera != null) {
+			putVec(buffer, camera.getCameraPosition().toVec());
+			putVec(buffer, camera.getTowardsVec());
+			putVec(buffer, camera.getUpVec());
+			putVec(buffer, camera.getRightVec());
+			buffer.putDouble(camera.getDistanceToPlain());
+		} else {
+			buffer.position(buffer.position() + 8 * CAMERA_DOUBLES);
+		}
+
+		//MARK: lights
+		for(Light light : lights)
+			buffer.putInt(lightType(light));
+		pad(buffer);
+		for(Light light : lights) {
+			putVec(buffer, light.intensity());
+			if(light instanceof PointLight) {
+				PointLight pointLight = (PointLight)light;
+				putVec(buffer, pointLight.position().toVec());
+				putVec(buffer, light instanceof Spotlight ? ((Spotlight)light).direction() : new Vec());
+				for(double factor : pointLight.decayFactors())
+					buffer.putDouble(factor);
+			} else {
+				putVec(buffer, new Vec());
+				putVec(buffer, ((DirectionalLight)light).direction());
+				buffer.position(buffer.position() + 8 * 3);
+			}
+		}
+
+		//MARK: materials
+		for(Material material : materials) {
+			putVec(buffer, material.Ka);
+			putVec(buffer, material.Kd);
+			putVec(buffer, material.Ks);
+			buffer.putDouble(material.reflectionIntensity).putDouble(material.shininess)
+					.putDouble(material.isTransparent ? 1 : 0).putDouble(material.refractionIntensity)
+					.putDouble(material.refractionIndex);
+		}
+
+		//MARK: surfaces and shapes
+		for(Surface surface : surfaces)
+			buffer.putInt(shapeType(surface.shape()));
+		for(Surface surface : surfaces)
+			buffer.putInt(materialsTable.get(surface.material()));
+		pad(buffer);
+		for(int type : new int[] {SPHERE, PLAIN, BOX})
+			for(Surface surface : surfaces) {
+				if(shapeType(surface.shape()) != type)
+					continue;
+				if(type == SPHERE) {
+					Sphere sphere = (Sphere)surface.shape();
+					putVec(buffer, sphere.center().toVec());
+					buffer.putDouble(sphere.radius());
+				} else if(type == PLAIN) {
+					for(double coefficient : ((Plain)surface.shape()).coefficients())
+						buffer.putDouble(coefficient);
+				} else {
+					AxisAlignedBox box = (AxisAlignedBox)surface.shape();
+					putVec(buffer, box.minPoint().toVec());
+					putVec(buffer, box.maxPoint().toVec());
+				}
+			}
+
+		buffer.flip();
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Reads a binary scene file through a memory mapped buffer. The shapes, lights and materials are copied
+	 * out of the mapping, which isn't referenced by the scene. The shapes are copied straight into the arrays
+	 * of the compiled scene the scene is rendered with (see CompiledScene), until a surface is added to it.
+	 * So shapes of the scene which are changed in place (by their init methods) keep being rendered as read.
+	 * @param path - the path of the file
+	 * @return the scene
+	 * @throws IOException if the file can't be read or isn't a valid binary scene file
+	 */
+	public static Scene read(Path path) throws IOException {
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			//the mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return read(buffer);
+	}
+
+	private static Scene read(ByteBuffer buffer) throws IOException {
+		//MARK: header
+		require(buffer, 1, 4 * HEADER_INTS, "header");
+		IntBuffer header = buffer.asIntBuffer();
+		if(header.get(0) != MAGIC)
+			throw new IOException("Not a binary scene file");
+		if(header.get(1) != VERSION)
+			throw new IOException("Unsupported binary scene file version: " + header.get(1));
+		int flags = header.get(4);
+		int lightsCount = header.get(5), materialsCount = header.get(6), surfacesCount = header.get(7);
+		int spheresCount = header.get(8), plainsCount = header.get(9), boxesCount = header.get(10);
+		if((long)spheresCount + plainsCount + boxesCount != surfacesCount)
+			throw new IOException("Invalid binary scene file: " + spheresCount + " spheres, " + plainsCount +
+					" plains and " + boxesCount + " boxes in " + surfacesCount + " surfaces");
+		buffer.position(4 * HEADER_INTS);
+		require(buffer, 1, 8 * 6 + 4, "header");
+		Vec ambient = getVec(buffer);
+		Vec backgroundColor = getVec(buffer);
+		int nameLength = buffer.getInt();
+		require(buffer, nameLength, 1, "name");
+		byte[] name = new byte[nameLength];
+		buffer.get(name);
+		skipPadding(buffer);
+
+		Scene scene = new Scene().initName(new String(name, StandardCharsets.UTF_8))
+				.initMaxRecursionLevel(header.get(2))
+				.initAntiAliasingFactor(header.get(3))
+				.initRenderRefarctions((flags & FLAG_REFRACTIONS) != 0)
+				.initRenderReflections((flags & FLAG_REFLECTIONS) != 0)
+				.initAmbient(ambient)
+				.initBackgroundColor(backgroundColor);
+
+		//MARK: camera
+		DoubleBuffer camera = doubles(buffer, 1, CAMERA_DOUBLES, "camera");
+		if((flags & FLAG_CAMERA) != 0)
+			scene.initCamera(new PinholeCamera(new Point(camera.get(0), camera.get(1), camera.get(2)),
+					vec(camera, 3), vec(camera, 6), vec(camera, 9), camera.get(12)));
+
+		//MARK: lights
+		IntBuffer lightTypes = ints(buffer, lightsCount, 1, "lights");
+		DoubleBuffer lights = doubles(buffer, lightsCount, LIGHT_DOUBLES, "lights");
+		for(int i = 0; i < lightsCount; ++i) {
+			int o = LIGHT_DOUBLES * i;
+			Vec intensity = vec(lights, o);
+			Point position = new Point(lights.get(o + 3), lights.get(o + 4), lights.get(o + 5));
+			Vec direction = vec(lights, o + 6);
+			switch(lightTypes.get(i)) {
+			case DIRECTIONAL_LIGHT:
+				scene.addLightSource(new DirectionalLight().initDirection(direction).initIntensity(intensity));
+				break;
+			case POINT_LIGHT:
+				scene.addLightSource(new PointLight().initPosition(position).initIntensity(intensity)
+						.initDecayFactors(lights.get(o + 9), lights.get(o + 10), lights.get(o + 11)));
+				break;
+			case SPOTLIGHT:
+				scene.addLightSource(new Spotlight().initDirection(direction).initPosition(position)
+						.initIntensity(intensity)
+						.initDecayFactors(lights.get(o + 9), lights.get(o + 10), lights.get(o + 11)));
+				break;
+			default:
+				throw new IOException("Unknown light type: " + lightTypes.get(i));
+			}
+		}
+
+		//MARK: materials
+		DoubleBuffer materialsTable = doubles(buffer, materialsCount, MATERIAL_DOUBLES, "materials");
+		Material[] materials = new Material[materialsCount];
+		for(int i = 0; i < materialsCount; ++i) {
+			int o = MATERIAL_DOUBLES * i;
+			materials[i] = new Material().initKa(vec(materialsTable, o)).initKd(vec(materialsTable, o + 3))
+					.initKs(vec(materialsTable, o + 6))
+					.initReflectionIntensity(materialsTable.get(o + 9))
+					.initShininess((int)materialsTable.get(o + 10))
+					.initIsTransparent(materialsTable.get(o + 11) != 0)
+					.initRefractionIntensity(materialsTable.get(o + 12))
+					.initRefractionIndex(materialsTable.get(o + 13));
+		}
+
+		//MARK: surfaces and shapes
+		IntBuffer surfaceTypes = ints(buffer, surfacesCount, 2, "surfaces");
+		DoubleBuffer spheres = doubles(buffer, spheresCount, SPHERE_DOUBLES, "spheres");
+		DoubleBuffer plains = doubles(buffer, plainsCount, PLAIN_DOUBLES, "plains");
+		DoubleBuffer boxes = doubles(buffer, boxesCount, BOX_DOUBLES, "boxes");
+		//the arrays of the compiled scene, in the layout of CompiledScene: plains and boxes are in the same layout
+		//in the file, and the spheres keep their squared radius instead of the radius
+		Surface[] surfaces = new Surface[surfacesCount];
+		int[] types = new int[surfacesCount], offsets = new int[surfacesCount], materialIndices = new int[surfacesCount];
+		double[] compiledSpheres = new double[SPHERE_DOUBLES * spheresCount];
+		double[] compiledPlains = new double[PLAIN_DOUBLES * plainsCount];
+		double[] compiledBoxes = new double[BOX_DOUBLES * boxesCount];
+		plains.get(compiledPlains);
+		boxes.get(compiledBoxes);
+		int sphere = 0, plain = 0, box = 0;
+		for(int i = 0; i < surfacesCount; ++i) {
+			int type = surfaceTypes.get(i);
+			Shape shape;
+			if(type == SPHERE && sphere < spheresCount) {
+				int o = offsets[i] = SPHERE_DOUBLES * sphere++;
+				double radius = spheres.get(o + 3);
+				compiledSpheres[o] = spheres.get(o);
+				compiledSpheres[o + 1] = spheres.get(o + 1);
+				compiledSpheres[o + 2] = spheres.get(o + 2);
+				compiledSpheres[o + 3] = radius * radius;
+				types[i] = CompiledScene.SPHERE;
+				shape = new Sphere(new Point(spheres.get(o), spheres.get(o + 1), spheres.get(o + 2)), radius);
+			} else if(type == PLAIN && plain < plainsCount) {
+				int o = offsets[i] = PLAIN_DOUBLES * plain++;
+				types[i] = CompiledScene.PLAIN;
+				shape = new Plain(compiledPlains[o], compiledPlains[o + 1], compiledPlains[o + 2], compiledPlains[o + 3]);
+			} else if(type == BOX && box < boxesCount) {
+				int o = offsets[i] = BOX_DOUBLES * box++;
+				types[i] = CompiledScene.BOX;
+				shape = new AxisAlignedBox(new Point(compiledBoxes[o], compiledBoxes[o + 1], compiledBoxes[o + 2]),
+						new Point(compiledBoxes[o + 3], compiledBoxes[o + 4], compiledBoxes[o + 5]));
+				//the box orders the coordinates of its corners (which write never swaps), and so does its compiled form
+				for(int axis = 0; axis < 3; ++axis) {
+					double a = compiledBoxes[o + axis], b = compiledBoxes[o + 3 + axis];
+					compiledBoxes[o + axis] = Math.min(a, b);
+					compiledBoxes[o + 3 + axis] = Math.max(a, b);
+				}
+			} else {
+				throw new IOException("Unknown shape type, or more shapes of the type than its count: " + type);
+			}
+			materialIndices[i] = surfaceTypes.get(surfacesCount + i);
+			if(materialIndices[i] < 0 || materialIndices[i] >= materialsCount)
+				throw new IOException("Invalid material index: " + materialIndices[i]);
+			surfaces[i] = new Surface(shape, materials[materialIndices[i]]);
+			scene.addSurface(surfaces[i]);
+		}
+		return scene.initReadCompiled(new CompiledScene(surfaces, types, offsets, materialIndices, materials,
+				compiledSpheres, compiledBoxes, compiledPlains));
+	}
+
+	private static int shapeType(Shape shape) {
+		if(shape instanceof Sphere)
+			return SPHERE;
+		if(shape instanceof Plain)
+			return PLAIN;
+		if(shape instanceof AxisAlignedBox)
+			return BOX;
+		throw new IllegalArgumentException("Shapes of type " + shape.getClass().getSimpleName() +
+				" can't be written as binary scene files");
+	}
+
+	private static int lightType(Light light) {
+		if(light instanceof Spotlight)
+			return SPOTLIGHT;
+		if(light instanceof PointLight)
+			return POINT_LIGHT;
+		if(light instanceof DirectionalLight)
+			return DIRECTIONAL_LIGHT;
+		throw new IllegalArgumentException("Lights of type " + light.getClass().getSimpleName() +
+				" can't be written as binary scene files");
+	}
+
+	/**
+	 * Checks that the rest of the buffer holds the given number of records.
+	 * @param recordSize - the size of a record in bytes
+	 * @param what - the records, for the message of the exception
+	 * @throws IOException if the count is negative or the records don't fit in the rest of the buffer
+	 */
+	private static void require(ByteBuffer buffer, int count, int recordSize, String what) throws IOException {
+		if(count < 0)
+			throw new IOException("Invalid binary scene file: " + count + " " + what);
+		if((long)count * recordSize > buffer.remaining())
+			throw new IOException("Truncated binary scene file: the " + what + " don't fit in it");
+	}
+
+	private static int align(int size) {
+		return (size + 7) & ~7;
+	}
+
+	private static void pad(ByteBuffer buffer) {
+		while(buffer.position() % 8 != 0)
+			buffer.put((byte)0);
+	}
+
+	//the padding at the end of a truncated file is missing, which the next block finds
+	private static void skipPadding(ByteBuffer buffer) {
+		buffer.position(Math.min(align(buffer.position()), buffer.limit()));
+	}
+
+	private static void putVec(ByteBuffer buffer, Vec v) {
+		buffer.putDouble(v.x).putDouble(v.y).putDouble(v.z);
+	}
+
+	private static Vec getVec(ByteBuffer buffer) {
+		return new Vec(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+	}
+
+	private static Vec vec(DoubleBuffer doubles, int offset) {
+		return new Vec(doubles.get(offset), doubles.get(offset + 1), doubles.get(offset + 2));
+	}
+
+	/**
+	 * @return a view of the next count records of size doubles of the buffer (without copying them), and skips them.
+	 * @throws IOException if they don't fit in the rest of the buffer
+	 */
+	private static DoubleBuffer doubles(ByteBuffer buffer, int count, int size, String what) throws IOException {
+		require(buffer, count, 8 * size, what);
+		DoubleBuffer view = buffer.slice(buffer.position(), 8 * size * count).order(ByteOrder.LITTLE_ENDIAN)
+				.asDoubleBuffer();
+		buffer.position(buffer.position() + 8 * size * count);
+		return view;
+	}
+
+	/**
+	 * @return a view of the next count records of size ints of the buffer (without copying them), and skips them
+	 * and the padding after them.
+	 * @throws IOException if they don't fit in the rest of the buffer
+	 */
+	private static IntBuffer ints(ByteBuffer buffer, int count, int size, String what) throws IOException {
+		require(buffer, count, 4 * size, what);
+		IntBuffer view = buffer.slice(buffer.position(), 4 * size * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		buffer.position(buffer.position() + 4 * size * count);
+		skipPadding(buffer);
+		return view;
+	}
+}
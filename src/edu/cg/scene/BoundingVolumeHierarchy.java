@@ -0,0 +1,329 @@
+package edu.cg.scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.cg.algebra.Bounds;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
+import edu.cg.algebra.Vec;
+
+/**
+ * A bounding volume hierarchy over the bounded surfaces of a compiled scene.
+ * The tree is stored in flat arrays (nodes are referenced by index) so traversal
+ * does not chase pointers. Unbounded surfaces (e.g. plains) can't be placed in the tree
+ * and are kept in a side list which is always tested.
+ * Surfaces are referenced by their position in the scene list, and are intersected by the compiled scene.
+ */
+public class BoundingVolumeHierarchy {
+	private static final int MAX_LEAF_SIZE = 4;
+	private static final int MAX_DEPTH = 64;
+
+	private final CompiledScene scene;
+	//the positions of the surfaces in the scene list, which are also used to break ties between equally distant hits.
+	//the items of a leaf are stored contiguously.
+	private final int[] unbounded;
+	private final int[] items;
+
+	//node data: bounds are stored as 6 doubles per node (min x,y,z, max x,y,z).
+	//inner nodes keep their right child index in 'first' (the left child is always node + 1).
+	private double[] nodeBounds;
+	private int[] first;
+	private int[] count;
+	private int nodesCount = 0;
+
+	/**
+	 * Builds the hierarchy over the surfaces of the given scene.
+	 * @param scene - the compiled surfaces of the scene
+	 */
+	public BoundingVolumeHierarchy(CompiledScene scene) {
+		this.scene = scene;
+		List<Integer> boundedIndices = new ArrayList<>();
+		List<Bounds> boundsList = new ArrayList<>();
+		List<Integer> unboundedIndices = new ArrayList<>();
+		for(int index = 0; index < scene.size(); ++index) {
+			Bounds bounds = scene.bounds(index);
+			if(bounds == null) {
+				unboundedIndices.add(index);
+			} else {
+				boundedIndices.add(index);
+				boundsList.add(bounds);
+			}
+		}
+
+		unbounded = unboundedIndices.stream().mapToInt(Integer::intValue).toArray();
+
+		int n = boundedIndices.size();
+		Integer[] order = new Integer[n];
+		Bounds[] bounds = boundsList.toArray(new Bounds[0]);
+		for(int i = 0; i < n; ++i)
+			order[i] = i;
+
+		int maxNodes = Math.max(1, 2 * n);
+		nodeBounds = new double[6 * maxNodes];
+		first = new int[maxNodes];
+		count = new int[maxNodes];
+		if(n > 0)
+			build(order, bounds, 0, n, 0);
+
+		items = new int[n];
+		for(int i = 0; i < n; ++i)
+			items[i] = boundedIndices.get(order[i]);
+	}
+
+	private int build(Integer[] order, Bounds[] bounds, int from, int to, int depth) {
+		int node = nodesCount++;
+		Bounds nodeBox = new Bounds();
+		Bounds centroids = new Bounds();
+		for(int i = from; i < to; ++i) {
+			Bounds b = bounds[order[i]];
+			nodeBox.include(b);
+			centroids.include(b.center(0), b.center(1), b.center(2));
+		}
+		setBounds(node, nodeBox);
+
+		int size = to - from;
+		if(size <= MAX_LEAF_SIZE | depth >= MAX_DEPTH - 2) {
+			first[node] = from;
+			count[node] = size;
+			return node;
+		}
+
+		//median split along the longest axis of the centroids
+		int axis = centroids.longestAxis();
+		Arrays.sort(order, from, to, Comparator.comparingDouble(i -> bounds[i].center(axis)));
+		int mid = from + size / 2;
+
+		build(order, bounds, from, mid, depth + 1);
+		first[node] = build(order, bounds, mid, to, depth + 1);
+		count[node] = 0;
+		return node;
+	}
+
+	//the bounds are padded by epsilon so rays grazing an edge of a shape are never culled
+	private void setBounds(int node, Bounds b) {
+		int i = 6 * node;
+		nodeBounds[i] = b.minX - Ops.epsilon;
+		nodeBounds[i + 1] = b.minY - Ops.epsilon;
+		nodeBounds[i + 2] = b.minZ - Ops.epsilon;
+		nodeBounds[i + 3] = b.maxX + Ops.epsilon;
+		nodeBounds[i + 4] = b.maxY + Ops.epsilon;
+		nodeBounds[i + 5] = b.maxZ + Ops.epsilon;
+	}
+
+	public int size() {
+		return items.length + unbounded.length;
+	}
+
+	public int unboundedSize() {
+		return unbounded.length;
+	}
+
+	public int nodesCount() {
+		return nodesCount;
+	}
+
+	/**
+	 * Finds the closest intersection between the ray and the surfaces of the hierarchy.
+	 * @param ray - the given ray
+	 * @param tests - the intersection tests counters (by shape type), incremented for each test
+	 * @return the closest hit, or null if the ray hits nothing.
+	 */
+	public Hit findMinHit(Ray ray, long[] tests) {
+		//only the distances are compared while searching, the full hit is created for the closest surface
+		double ox = ray.source().x, oy = ray.source().y, oz = ray.source().z;
+		Vec direction = ray.direction();
+		double dx = direction.x, dy = direction.y, dz = direction.z;
+		Vec inverse = ray.inverseDirection();
+		double ix = inverse.x, iy = inverse.y, iz = inverse.z;
+		double tMax = Double.POSITIVE_INFINITY;
+		int minIndex = Integer.MAX_VALUE;
+		for(int index : unbounded) {
+			++tests[scene.type(index)];
+			double t = scene.intersect(index, ray, ox, oy, oz, dx, dy, dz, ix, iy, iz, tests);
+			if(isCloser(t, index, tMax, minIndex)) {
+				tMax = t;
+				minIndex = index;
+			}
+		}
+
+		int[] stack = new int[MAX_DEPTH];
+		int top = 0;
+		if(items.length > 0)
+			stack[top++] = 0;
+		while(top > 0) {
+			int node = stack[--top];
+			if(entryDistance(node, ox, oy, oz, ix, iy, iz, tMax) == Double.POSITIVE_INFINITY)
+				continue;
+
+			if(count[node] > 0) {
+				for(int i = first[node], end = first[node] + count[node]; i < end; ++i) {
+					++tests[scene.type(items[i])];
+					double t = scene.intersect(items[i], ray, ox, oy, oz, dx, dy, dz, ix, iy, iz, tests);
+					if(isCloser(t, items[i], tMax, minIndex)) {
+						tMax = t;
+						minIndex = items[i];
+					}
+				}
+			} else {
+				//visit the nearer child first
+				int left = node + 1, right = first[node];
+				double tLeft = entryDistance(left, ox, oy, oz, ix, iy, iz, tMax);
+				double tRight = entryDistance(right, ox, oy, oz, ix, iy, iz, tMax);
+				if(tLeft <= tRight) {
+					if(tRight != Double.POSITIVE_INFINITY)
+						stack[top++] = right;
+					if(tLeft != Double.POSITIVE_INFINITY)
+						stack[top++] = left;
+				} else {
+					if(tLeft != Double.POSITIVE_INFINITY)
+						stack[top++] = left;
+					stack[top++] = right;
+				}
+			}
+		}
+		return tMax == Double.POSITIVE_INFINITY ? null : scene.hit(minIndex, ray);
+	}
+
+	//equally distant hits are resolved in favor of the surface that was added to the scene first
+	private static boolean isCloser(double t, int index, double minT, int minIndex) {
+		return t < minT || (t == minT && t != Double.POSITIVE_INFINITY && index < minIndex);
+	}
+
+	/**
+	 * Finds the closest intersection of each ray of the packet with the surfaces of the hierarchy.
+	 * The hits are recorded in the packet with the position of the surface in the scene list as their id.
+	 * A node is visited by the whole packet, and culled only if all of its rays miss it.
+	 * @param packet - the given rays
+	 * @param tests - the intersection tests counters (by shape type), incremented for each ray tested
+	 */
+	public void intersect(RayPacket packet, long[] tests) {
+		for(int index : unbounded) {
+			tests[scene.type(index)] += packet.size;
+			scene.intersect(index, packet, tests);
+		}
+
+		if(items.length == 0)
+			return;
+
+		int[] stack = new int[MAX_DEPTH];
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0) {
+			int node = stack[--top];
+			if(!isVisited(node, packet))
+				continue;
+
+			if(count[node] > 0) {
+				for(int i = first[node], end = first[node] + count[node]; i < end; ++i) {
+					tests[scene.type(items[i])] += packet.size;
+					scene.intersect(items[i], packet, tests);
+				}
+			} else {
+				stack[top++] = first[node];
+				stack[top++] = node + 1;
+			}
+		}
+	}
+
+	//whether any ray of the packet enters the node bounds before its closest hit so far
+	private boolean isVisited(int node, RayPacket packet) {
+		double ox = packet.ox, oy = packet.oy, oz = packet.oz;
+		for(int i = 0; i < packet.size; ++i)
+			if(entryDistance(node, ox, oy, oz, packet.ix[i], packet.iy[i], packet.iz[i], packet.t[i]) != Double.POSITIVE_INFINITY)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks whether any surface blocks the ray before the given distance.
+	 * The traversal stops at the first blocker found (which isn't necessarily the closest one).
+	 * @param ray - the ray to the light source
+	 * @param tMax - the distance to the light source
+	 * @param tests - the intersection tests counters (by shape type), incremented for each test
+	 * @return true if one of the surfaces occludes the ray.
+	 */
+	public boolean anyHit(Ray ray, double tMax, long[] tests) {
+		return findOccluder(ray, tMax, tests) >= 0;
+	}
+
+	/**
+	 * Like anyHit, but returns the blocker that was found.
+	 * @return the position of the blocking surface in the scene list, or -1 if the ray isn't occluded.
+	 */
+	public int findOccluder(Ray ray, double tMax, long[] tests) {
+		double ox = ray.source().x, oy = ray.source().y, oz = ray.source().z;
+		Vec direction = ray.direction();
+		double dx = direction.x, dy = direction.y, dz = direction.z;
+		Vec inverse = ray.inverseDirection();
+		double ix = inverse.x, iy = inverse.y, iz = inverse.z;
+		for(int index : unbounded) {
+			++tests[scene.type(index)];
+			if(scene.occludes(index, ray, ox, oy, oz, dx, dy, dz, ix, iy, iz, tMax, tests))
+				return index;
+		}
+
+		if(items.length == 0)
+			return -1;
+
+		int[] stack = new int[MAX_DEPTH];
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0) {
+			int node = stack[--top];
+			if(entryDistance(node, ox, oy, oz, ix, iy, iz, tMax) == Double.POSITIVE_INFINITY)
+				continue;
+
+			if(count[node] > 0) {
+				for(int i = first[node], end = first[node] + count[node]; i < end; ++i) {
+					++tests[scene.type(items[i])];
+					if(scene.occludes(items[i], ray, ox, oy, oz, dx, dy, dz, ix, iy, iz, tMax, tests))
+						return items[i];
+				}
+			} else {
+				stack[top++] = first[node];
+				stack[top++] = node + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether a single surface blocks the ray before the given distance.
+	 * @param index - the position of the surface in the scene list
+	 */
+	public boolean occludes(int index, Ray ray, double tMax, long[] tests) {
+		++tests[scene.type(index)];
+		Vec direction = ray.direction(), inverse = ray.inverseDirection();
+		return scene.occludes(index, ray, ray.source().x, ray.source().y, ray.source().z,
+				direction.x, direction.y, direction.z, inverse.x, inverse.y, inverse.z, tMax, tests);
+	}
+
+	/**
+	 * Slab test of the ray against the bounds of a node.
+	 * @return the distance in which the ray enters the node bounds,
+	 * or positive infinity if it misses them (or enters them after tMax).
+	 */
+	private double entryDistance(int node, double ox, double oy, double oz,
+			double ix, double iy, double iz, double tMax) {
+		int b = 6 * node;
+		double t1 = (nodeBounds[b] - ox) * ix, t2 = (nodeBounds[b + 3] - ox) * ix;
+		double tNear = Math.min(t1, t2), tFar = Math.max(t1, t2);
+		t1 = (nodeBounds[b + 1] - oy) * iy;
+		t2 = (nodeBounds[b + 4] - oy) * iy;
+		tNear = Math.max(tNear, Math.min(t1, t2));
+		tFar = Math.min(tFar, Math.max(t1, t2));
+		t1 = (nodeBounds[b + 2] - oz) * iz;
+		t2 = (nodeBounds[b + 5] - oz) * iz;
+		tNear = Math.max(tNear, Math.min(t1, t2));
+		tFar = Math.min(tFar, Math.max(t1, t2));
+
+		if(tFar < 0 | tNear > tFar | tNear > tMax)
+			return Double.POSITIVE_INFINITY;
+		return tNear;
+	}
+}
@@ -0,0 +1,357 @@
+package edu.cg.scene;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cg.algebra.Bounds;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Instance;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A flat form of the surfaces of a scene, compiled before each render.
+ * The geometry of the known shapes is copied into primitive arrays grouped by the shape type,
+ * so the intersection tests of the render loop read contiguous doubles instead of chasing
+ * the Surface -> Shape -> Point references. Surfaces are referenced by their position in the
+ * scene list, which is also the index into the material table.
+ * Instances are intersected with a hierarchy over the surfaces of their group, which is compiled once
+ * and shared by all the instances of the group.
+ * Other shapes are kept as objects and intersected through the object model.
+ */
+public class CompiledScene {
+	static final int SPHERE = 0;
+	static final int BOX = 1;
+	static final int PLAIN = 2;
+	static final int OTHER = 3;
+	static final int INSTANCE = 4;
+	static final String[] TYPE_NAMES = {"sphere", "box", "plain", "other", "instance"};
+
+	//per surface: its shape type, its offset in the array of that type and its material
+	private final int[] types;
+	private final int[] offsets;
+	private final int[] materialIndices;
+	private final Surface[] surfaces;
+
+	//center x, y, z and squared radius per sphere
+	private final double[] spheres;
+	//min x, y, z and max x, y, z per box
+	private final double[] boxes;
+	//a, b, c, d per plain
+	private final double[] plains;
+	//per instance: the instance and the hierarchy over its group (null for other surfaces)
+	private final Instance[] instances;
+	private final BoundingVolumeHierarchy[] groupTrees;
+
+	//the distinct materials of the surfaces
+	private final Material[] materials;
+
+	/**
+	 * Compiles the given surfaces. Changes made to the surfaces afterwards aren't reflected.
+	 * @param surfaces - the surfaces of the scene
+	 */
+	public CompiledScene(List<Surface> surfaces) {
+		this(surfaces, new IdentityHashMap<>());
+	}
+
+	/**
+	 * @param groupTrees - the hierarchies built so far over the groups of instances, by the surfaces of the group
+	 */
+	private CompiledScene(List<Surface> surfaces, Map<List<Surface>, BoundingVolumeHierarchy> groupTrees) {
+		int n = surfaces.size();
+		this.surfaces = surfaces.toArray(new Surface[0]);
+		types = new int[n];
+		offsets = new int[n];
+		materialIndices = new int[n];
+		instances = new Instance[n];
+		this.groupTrees = new BoundingVolumeHierarchy[n];
+
+		int spheresCount = 0, boxesCount = 0, plainsCount = 0;
+		for(Surface surface : this.surfaces) {
+			if(surface.shape() instanceof Sphere)
+				++spheresCount;
+			else if(surface.shape() instanceof AxisAlignedBox)
+				++boxesCount;
+			else if(surface.shape() instanceof Plain)
+				++plainsCount;
+		}
+		spheres = new double[4 * spheresCount];
+		boxes = new double[6 * boxesCount];
+		plains = new double[4 * plainsCount];
+
+		Map<Material, Integer> materialsTable = new IdentityHashMap<>();
+		spheresCount = boxesCount = plainsCount = 0;
+		for(int i = 0; i < n; ++i) {
+			Surface surface = this.surfaces[i];
+			if(surface.shape() instanceof Sphere) {
+				Sphere sphere = (Sphere)surface.shape();
+				types[i] = SPHERE;
+				offsets[i] = 4 * spheresCount++;
+				Point center = sphere.center();
+				set(spheres, offsets[i], center.x, center.y, center.z, sphere.radius() * sphere.radius());
+			} else if(surface.shape() instanceof AxisAlignedBox) {
+				AxisAlignedBox box = (AxisAlignedBox)surface.shape();
+				types[i] = BOX;
+				offsets[i] = 6 * boxesCount++;
+				Point min = box.minPoint(), max = box.maxPoint();
+				set(boxes, offsets[i], min.x, min.y, min.z, max.x, max.y, max.z);
+			} else if(surface.shape() instanceof Plain) {
+				types[i] = PLAIN;
+				offsets[i] = 4 * plainsCount++;
+				set(plains, offsets[i], ((Plain)surface.shape()).coefficients());
+			} else if(surface.shape() instanceof Instance) {
+				types[i] = INSTANCE;
+				instances[i] = (Instance)surface.shape();
+				this.groupTrees[i] = groupTree(instances[i].surfaces(), groupTrees);
+			} else {
+				types[i] = OTHER;
+			}
+			materialIndices[i] = materialsTable.computeIfAbsent(surface.material(), m -> materialsTable.size());
+		}
+
+		materials = new Material[materialsTable.size()];
+		for(Map.Entry<Material, Integer> entry : materialsTable.entrySet())
+			materials[entry.getValue()] = entry.getKey();
+	}
+
+	/**
+	 * Takes the given arrays as they are, in the layout of the fields, e.g. the ones read straight from
+	 * a binary scene file (see BinaryScene.read). The surfaces are spheres, boxes and plains only.
+	 * @param types - the shape type of each surface (SPHERE, BOX or PLAIN)
+	 * @param offsets - the offset of each surface in the array of its type
+	 * @param materialIndices - the index of the material of each surface in the materials
+	 */
+	CompiledScene(Surface[] surfaces, int[] types, int[] offsets, int[] materialIndices, Material[] materials,
+			double[] spheres, double[] boxes, double[] plains) {
+		this.surfaces = surfaces;
+		this.types = types;
+		this.offsets = offsets;
+		this.materialIndices = materialIndices;
+		this.materials = materials;
+		this.spheres = spheres;
+		this.boxes = boxes;
+		this.plains = plains;
+		instances = new Instance[surfaces.length];
+		groupTrees = new BoundingVolumeHierarchy[surfaces.length];
+	}
+
+	//the hierarchy over the given group, which is built on its first instance (groups were bound by the scene,
+	//so groups can't contain instances of themselves)
+	private static BoundingVolumeHierarchy groupTree(List<Surface> group,
+			Map<List<Surface>, BoundingVolumeHierarchy> groupTrees) {
+		BoundingVolumeHierarchy tree = groupTrees.get(group);
+		if(tree == null) {
+			tree = new BoundingVolumeHierarchy(new CompiledScene(group, groupTrees));
+			groupTrees.put(group, tree);
+		}
+		return tree;
+	}
+
+	private static void set(double[] array, int offset, double... values) {
+		System.arraycopy(values, 0, array, offset, values.length);
+	}
+
+	public int size() {
+		return surfaces.length;
+	}
+
+	public int materialsCount() {
+		return materials.length;
+	}
+
+	/**
+	 * @return the shape type of the surface at the given position (SPHERE, BOX, PLAIN, OTHER or INSTANCE)
+	 */
+	int type(int index) {
+		return types[index];
+	}
+
+	public Surface surface(int index) {
+		return surfaces[index];
+	}
+
+	/**
+	 * @return the bounds of the surface at the given position, or null if it is unbounded.
+	 */
+	public Bounds bounds(int index) {
+		return surfaces[index].bounds();
+	}
+
+	/**
+	 * @return the material of the surface the hit is on.
+	 */
+	public Material material(Hit hit) {
+		int index = hit.getSurfaceIndex();
+		return index < 0 ? hit.getSurface().material() : materials[materialIndices[index]];
+	}
+
+	/**
+	 * Intersects the ray with the surface at the given position.
+	 * The ray is given by its components: source (ox, oy, oz), direction (dx, dy, dz) and
+	 * inverse direction (ix, iy, iz). The computation is the same as the one of the shape.
+	 * @param tests - the intersection tests counters, incremented for the tests inside the group of an instance
+	 * @return the distance of the hit, or positive infinity if the ray misses the surface.
+	 */
+	double intersect(int index, Ray ray, double ox, double oy, double oz,
+			double dx, double dy, double dz, double ix, double iy, double iz, long[] tests) {
+		int o = offsets[index];
+		switch(types[index]) {
+		case SPHERE: {
+			double cx = ox - spheres[o], cy = oy - spheres[o + 1], cz = oz - spheres[o + 2];
+			double b = dx*cx + dy*cy + dz*cz;
+			double discriminant = Math.sqrt(b*b - ((cx*cx + cy*cy + cz*cz) - spheres[o + 3]));
+			if(Double.isNaN(discriminant) || (-b + discriminant) < Ops.epsilon)
+				return Double.POSITIVE_INFINITY;
+			return -b - discriminant > 0 ? -b - discriminant : -b + discriminant;
+		}
+		case BOX: {
+			double tNear = Double.NEGATIVE_INFINITY, tFar = Double.POSITIVE_INFINITY;
+			if(dx == 0) {
+				if(ox < boxes[o] || ox > boxes[o + 3])
+					return Double.POSITIVE_INFINITY;
+			} else {
+				double t1 = (boxes[o] - ox) * ix, t2 = (boxes[o + 3] - ox) * ix;
+				tNear = Math.min(t1, t2);
+				tFar = Math.max(t1, t2);
+			}
+			if(dy == 0) {
+				if(oy < boxes[o + 1] || oy > boxes[o + 4])
+					return Double.POSITIVE_INFINITY;
+			} else {
+				double t1 = (boxes[o + 1] - oy) * iy, t2 = (boxes[o + 4] - oy) * iy;
+				tNear = Math.max(tNear, Math.min(t1, t2));
+				tFar = Math.min(tFar, Math.max(t1, t2));
+			}
+			if(dz == 0) {
+				if(oz < boxes[o + 2] || oz > boxes[o + 5])
+					return Double.POSITIVE_INFINITY;
+			} else {
+				double t1 = (boxes[o + 2] - oz) * iz, t2 = (boxes[o + 5] - oz) * iz;
+				tNear = Math.max(tNear, Math.min(t1, t2));
+				tFar = Math.min(tFar, Math.max(t1, t2));
+			}
+			if(tNear > tFar)
+				return Double.POSITIVE_INFINITY;
+			if(tNear > Ops.epsilon && tNear < Ops.infinity)
+				return tNear;
+			if(tFar > Ops.epsilon && tFar < Ops.infinity)
+				return tFar;
+			return Double.POSITIVE_INFINITY;
+		}
+		case PLAIN: {
+			double a = plains[o], b = plains[o + 1], c = plains[o + 2];
+			double t = -(a*ox + b*oy + c*oz + plains[o + 3]) / (dx*a + dy*b + dz*c);
+			return t > Ops.epsilon & t < Ops.infinity ? t : Double.POSITIVE_INFINITY;
+		}
+		case INSTANCE:
+			return intersectInstance(index, ray, tests);
+		default: {
+			Hit hit = surfaces[index].intersect(ray);
+			return hit == null ? Double.POSITIVE_INFINITY : hit.t();
+		}
+		}
+	}
+
+	/**
+	 * Checks whether the ray hits the surface at the given position before tMax.
+	 * The ray is given like in intersect.
+	 */
+	boolean occludes(int index, Ray ray, double ox, double oy, double oz,
+			double dx, double dy, double dz, double ix, double iy, double iz, double tMax, long[] tests) {
+		int o = offsets[index];
+		switch(types[index]) {
+		case SPHERE: {
+			double cx = ox - spheres[o], cy = oy - spheres[o + 1], cz = oz - spheres[o + 2];
+			double b = dx*cx + dy*cy + dz*cz;
+			double discriminant = Math.sqrt(b*b - ((cx*cx + cy*cy + cz*cz) - spheres[o + 3]));
+			if(Double.isNaN(discriminant) || (-b + discriminant) < Ops.epsilon)
+				return false;
+			return (-b - discriminant > 0 ? -b - discriminant : -b + discriminant) < tMax;
+		}
+		case BOX: {
+			double tNear = Double.NEGATIVE_INFINITY, tFar = Double.POSITIVE_INFINITY;
+			for(int axis = 0; axis < 3; ++axis) {
+				double origin = axis == 0 ? ox : (axis == 1 ? oy : oz);
+				double inv = axis == 0 ? ix : (axis == 1 ? iy : iz);
+				double min = boxes[o + axis], max = boxes[o + axis + 3];
+				if(Double.isInfinite(inv)) {
+					if(origin < min || origin > max)
+						return false;
+					continue;
+				}
+				double t1 = (min - origin) * inv, t2 = (max - origin) * inv;
+				tNear = Math.max(tNear, Math.min(t1, t2));
+				tFar = Math.min(tFar, Math.max(t1, t2));
+				if(tNear > tFar)
+					return false;
+			}
+			double t = tNear > Ops.epsilon ? tNear : tFar;
+			return t > Ops.epsilon & t < Ops.infinity & t < tMax;
+		}
+		case PLAIN: {
+			double a = plains[o], b = plains[o + 1], c = plains[o + 2];
+			double t = -(a*ox + b*oy + c*oz + plains[o + 3]) / (dx*a + dy*b + dz*c);
+			return t > Ops.epsilon & t < Ops.infinity & t < tMax;
+		}
+		case INSTANCE: {
+			Instance instance = instances[index];
+			return groupTrees[index].findOccluder(instance.toGroup(ray), tMax / instance.scale(), tests) >= 0;
+		}
+		default:
+			return surfaces[index].occludes(ray, tMax);
+		}
+	}
+
+	//the distance of the closest hit of the ray with the group of the instance at the given position
+	private double intersectInstance(int index, Ray ray, long[] tests) {
+		Instance instance = instances[index];
+		Hit hit = groupTrees[index].findMinHit(instance.toGroup(ray), tests);
+		return hit == null ? Double.POSITIVE_INFINITY : hit.t() * instance.scale();
+	}
+
+	/**
+	 * Intersects the rays of the packet with the surface at the given position.
+	 * The packet kernels of the shapes already share the per-object work between the rays,
+	 * so packets are intersected through the object model. The rays of a packet are transformed
+	 * into the coordinates of the group of an instance one by one.
+	 * @param tests - the intersection tests counters, incremented for the tests inside the group of an instance
+	 */
+	void intersect(int index, RayPacket packet, long[] tests) {
+		if(types[index] != INSTANCE) {
+			surfaces[index].intersect(packet, index);
+			return;
+		}
+		for(int i = 0; i < packet.size; ++i)
+			packet.record(i, intersectInstance(index, packet.ray(i), tests), index);
+	}
+
+	/**
+	 * Creates the full hit (normal, side and surface) of a ray with the surface at the given position.
+	 * Only called for the closest hit, once the search over the arrays is done.
+	 * @return the hit, or null if the ray misses the surface.
+	 */
+	public Hit hit(int index, Ray ray) {
+		if(types[index] == INSTANCE) {
+			Instance instance = instances[index];
+			Hit groupHit = groupTrees[index].findMinHit(instance.toGroup(ray), new long[TYPE_NAMES.length]);
+			if(groupHit == null)
+				return null;
+			//the instances of a group share its surfaces, so the key of the instance (and of the instances it is
+			//nested in) tells the hits of different instances apart
+			return instance.toScene(groupHit).setInstanceKey(31 * groupHit.getInstanceKey() + index + 1);
+		}
+		Hit hit = surfaces[index].intersect(ray);
+		//hits of instances are on surfaces of their group, which aren't in the materials table
+		if(hit != null && hit.getSurface() == surfaces[index])
+			hit.setSurfaceIndex(index);
+		return hit;
+	}
+}
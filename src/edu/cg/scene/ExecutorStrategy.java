@@ -0,0 +1,44 @@
+package edu.cg.scene;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The threads that render the tiles of an image (see Scene.initExecutorStrategy).
+ * All the strategies render with the threads count of the scene, and render the same images.
+ */
+public enum ExecutorStrategy {
+	/**
+	 * A fixed pool of platform threads, which take the tiles from a shared queue.
+	 */
+	FIXED_POOL,
+	/**
+	 * A work stealing pool of platform threads, where ranges of tiles are split in halves and idle threads
+	 * steal the remaining halves of busy ones. This is the default.
+	 */
+	FORK_JOIN,
+	/**
+	 * A new virtual thread per tile, where a semaphore bounds the number of tiles rendered at once by the threads
+	 * count. Suits services that already run their requests on virtual threads. Virtual threads need a Java 21
+	 * runtime (see isAvailable): the project is built for Java 17, so they are created by reflection.
+	 */
+	VIRTUAL_THREADS;
+	
+	/**
+	 * @return false if the strategy isn't supported by the running Java version.
+	 */
+	public boolean isAvailable() {
+		return this != VIRTUAL_THREADS || newVirtualThreadPerTaskExecutor() != null;
+	}
+	
+	/**
+	 * @return an executor that starts a new virtual thread for each task, or null before Java 21.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package edu.cg.scene;
+
+import java.awt.Rectangle;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Vec;
+
+/**
+ * The primary hits of a render, per pixel: the distance of the hit point along the view ray, the normal,
+ * the side of the surface and the surface that was hit. The view ray of each pixel isn't stored, since it is
+ * computed again from the camera, exactly as it was computed when the pixel was traced.
+ * Renders in relighting mode (see Scene.initRelighting) shade the stored hits instead of tracing the primary
+ * rays again, as long as the camera and the geometry haven't changed (see signature).
+ */
+class GBuffer {
+	//the surface index of pixels whose primary ray hit nothing
+	private static final int BACKGROUND = -1;
+	//the surface index of pixels that hit a surface of an instance, which is placed by its instance shape
+	//rather than compiled, so these pixels are traced again
+	private static final int TRACE = -2;
+
+	//a hash of the camera, the rendered region and the shapes of the scene the hits were found in
+	final String signature;
+	final Rectangle region;
+
+	private final double[] t;
+	private final double[] normals;
+	private final boolean[] within;
+	//the position of the surface in the compiled scene, BACKGROUND or TRACE
+	private final int[] surfaceIndices;
+
+	GBuffer(String signature, Rectangle region) {
+		this.signature = signature;
+		this.region = new Rectangle(region);
+		int n = region.width * region.height;
+		t = new double[n];
+		normals = new double[3 * n];
+		within = new boolean[n];
+		surfaceIndices = new int[n];
+	}
+
+	/**
+	 * Stores the primary hit of a pixel.
+	 * @param index - the position of the pixel in the region
+	 * @param hit - the hit, or null if the primary ray hit nothing
+	 */
+	void set(int index, Hit hit) {
+		if(hit == null) {
+			surfaceIndices[index] = BACKGROUND;
+			return;
+		}
+		if(hit.getSurfaceIndex() < 0) {
+			surfaceIndices[index] = TRACE;
+			return;
+		}
+		t[index] = hit.t();
+		Vec normal = hit.getNormalToSurface();
+		normals[3 * index] = normal.x;
+		normals[3 * index + 1] = normal.y;
+		normals[3 * index + 2] = normal.z;
+		within[index] = hit.isWithinTheSurface();
+		surfaceIndices[index] = hit.getSurfaceIndex();
+	}
+
+	/**
+	 * @return false if the primary ray of the pixel has to be traced again.
+	 */
+	boolean isStored(int index) {
+		return surfaceIndices[index] != TRACE;
+	}
+
+	/**
+	 * @return a copy of the stored hit of the pixel, on the surface at the same position of the given
+	 * compiled scene, or null if the primary ray of the pixel hit nothing.
+	 */
+	Hit hit(int index, CompiledScene compiled) {
+		int surfaceIndex = surfaceIndices[index];
+		if(surfaceIndex < 0)
+			return null;
+		Hit hit = new Hit(t[index], new Vec(normals[3 * index], normals[3 * index + 1], normals[3 * index + 2]))
+				.setIsWithin(within[index]);
+		hit.setSurface(compiled.surface(surfaceIndex));
+		return hit.setSurfaceIndex(surfaceIndex);
+	}
+}
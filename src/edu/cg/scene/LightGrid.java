@@ -0,0 +1,190 @@
+package edu.cg.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+
+/**
+ * A uniform grid over the ranges of the lights of a scene (see Light.range), which finds the lights that may
+ * illuminate a point. Each cell keeps the lights whose range sphere overlaps it, except for spotlights the cell is
+ * entirely behind. Lights that reach every point (e.g. directional lights) are kept in every cell.
+ * Lights are referenced by their position in the scene, and the lights of each cell are kept in that order,
+ * so the colors of the lights are summed in the same order as without the grid.
+ */
+class LightGrid {
+	//the grid has about CELLS_PER_LIGHT cells per light with a range, and at most MAX_RESOLUTION cells along each axis
+	private static final int CELLS_PER_LIGHT = 8;
+	private static final int MAX_RESOLUTION = 64;
+
+	private final Light[] lights;
+	private final double[] rangesSqr;
+	//the lights that reach every point, which are the lights of points outside the grid
+	private final int[] unbounded;
+	private int boundedCount = 0;
+
+	//the grid: its minimal corner, cell size and resolution. cells is null if no light has a range.
+	private double minX, minY, minZ, cellSize;
+	private int nx, ny, nz;
+	private int[][] cells = null;
+
+	/**
+	 * Builds the grid over the given lights.
+	 * @param lights - the lights of the scene
+	 * @param cutoff - the intensity below which a light is ignored (see Light.range)
+	 */
+	LightGrid(List<Light> lights, double cutoff) {
+		this.lights = lights.toArray(new Light[0]);
+		rangesSqr = new double[this.lights.length];
+		List<Integer> unboundedIndices = new ArrayList<>();
+		double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+		double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for(int i = 0; i < this.lights.length; ++i) {
+			double range = this.lights[i].range(cutoff);
+			Point position = this.lights[i] instanceof PointLight ? ((PointLight)this.lights[i]).position() : null;
+			if(Double.isInfinite(range) || position == null) {
+				rangesSqr[i] = Double.POSITIVE_INFINITY;
+				unboundedIndices.add(i);
+				continue;
+			}
+			rangesSqr[i] = range * range;
+			++boundedCount;
+			double[] p = position.asArray();
+			for(int axis = 0; axis < 3; ++axis) {
+				min[axis] = Math.min(min[axis], p[axis] - range);
+				max[axis] = Math.max(max[axis], p[axis] + range);
+			}
+		}
+		unbounded = unboundedIndices.stream().mapToInt(Integer::intValue).toArray();
+		if(boundedCount > 0)
+			build(min, max);
+	}
+
+	private void build(double[] min, double[] max) {
+		double ex = max[0] - min[0], ey = max[1] - min[1], ez = max[2] - min[2];
+		cellSize = Math.cbrt(ex * ey * ez / (CELLS_PER_LIGHT * boundedCount));
+		cellSize = Math.max(cellSize, Math.max(ex, Math.max(ey, ez)) / MAX_RESOLUTION);
+		if(!(cellSize > 0))
+			cellSize = 1;
+		minX = min[0];
+		minY = min[1];
+		minZ = min[2];
+		nx = Math.max(1, (int)Math.ceil(ex / cellSize));
+		ny = Math.max(1, (int)Math.ceil(ey / cellSize));
+		nz = Math.max(1, (int)Math.ceil(ez / cellSize));
+
+		//the lights are added in the order of the scene, so the list of each cell is sorted
+		@SuppressWarnings("unchecked")
+		List<Integer>[] lists = (List<Integer>[])new List<?>[nx * ny * nz];
+		for(int i = 0; i < lights.length; ++i) {
+			if(Double.isInfinite(rangesSqr[i]))
+				continue;
+			double[] p = ((PointLight)lights[i]).position().asArray();
+			double range = Math.sqrt(rangesSqr[i]);
+			int x0 = cell(p[0] - range, minX, nx), x1 = cell(p[0] + range, minX, nx);
+			int y0 = cell(p[1] - range, minY, ny), y1 = cell(p[1] + range, minY, ny);
+			int z0 = cell(p[2] - range, minZ, nz), z1 = cell(p[2] + range, minZ, nz);
+			for(int z = z0; z <= z1; ++z)
+				for(int y = y0; y <= y1; ++y)
+					for(int x = x0; x <= x1; ++x)
+						if(overlaps(i, p, x, y, z))
+							add(lists, (z * ny + y) * nx + x, i);
+		}
+
+		//cells without lights of their own share the array of the unbounded lights
+		cells = new int[lists.length][];
+		for(int cell = 0; cell < lists.length; ++cell)
+			cells[cell] = lists[cell] == null ? unbounded : merge(lists[cell], unbounded);
+	}
+
+	/**
+	 * @return the union of the two sorted lists of lights, sorted.
+	 */
+	private static int[] merge(List<Integer> bounded, int[] unbounded) {
+		int[] merged = new int[bounded.size() + unbounded.length];
+		int i = 0, j = 0;
+		for(int k = 0; k < merged.length; ++k)
+			merged[k] = j >= unbounded.length || (i < bounded.size() && bounded.get(i) < unbounded[j]) ?
+					bounded.get(i++) : unbounded[j++];
+		return merged;
+	}
+
+	private static void add(List<Integer>[] lists, int cell, int light) {
+		if(lists[cell] == null)
+			lists[cell] = new ArrayList<>();
+		lists[cell].add(light);
+	}
+
+	private int cell(double coordinate, double min, int resolution) {
+		return Math.min(resolution - 1, Math.max(0, (int)Math.floor((coordinate - min) / cellSize)));
+	}
+
+	/**
+	 * @return true if the range sphere of the light overlaps the cell, and the cell isn't entirely behind
+	 * the light if it is a spotlight.
+	 */
+	private boolean overlaps(int light, double[] p, int x, int y, int z) {
+		double[] lo = {minX + x * cellSize, minY + y * cellSize, minZ + z * cellSize};
+		double distSqr = 0;
+		for(int axis = 0; axis < 3; ++axis) {
+			double d = Math.max(0, Math.max(lo[axis] - p[axis], p[axis] - lo[axis] - cellSize));
+			distSqr += d * d;
+		}
+		if(distSqr > rangesSqr[light])
+			return false;
+		if(!(lights[light] instanceof Spotlight))
+			return true;
+		//a spotlight reaches only points in front of it, so the cell is kept if one of its corners is in front
+		Vec direction = ((Spotlight)lights[light]).direction();
+		for(int corner = 0; corner < 8; ++corner) {
+			double cx = lo[0] + ((corner & 1) != 0 ? cellSize : 0) - p[0];
+			double cy = lo[1] + ((corner & 2) != 0 ? cellSize : 0) - p[1];
+			double cz = lo[2] + ((corner & 4) != 0 ? cellSize : 0) - p[2];
+			if(cx * direction.x + cy * direction.y + cz * direction.z > 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the positions of the lights that may illuminate the point, in the order of the scene.
+	 * The array must not be modified.
+	 */
+	int[] lights(Point point) {
+		if(cells == null)
+			return unbounded;
+		int x = (int)Math.floor((point.x - minX) / cellSize);
+		int y = (int)Math.floor((point.y - minY) / cellSize);
+		int z = (int)Math.floor((point.z - minZ) / cellSize);
+		if(x < 0 | y < 0 | z < 0 | x >= nx | y >= ny | z >= nz)
+			return unbounded;
+		return cells[(z * ny + y) * nx + x];
+	}
+
+	/**
+	 * @return true if the point is within the range of the light.
+	 */
+	boolean reaches(int light, Point point) {
+		double rangeSqr = rangesSqr[light];
+		return rangeSqr == Double.POSITIVE_INFINITY || ((PointLight)lights[light]).position().distSqr(point) <= rangeSqr;
+	}
+
+	Light light(int index) {
+		return lights[index];
+	}
+
+	/**
+	 * @return the number of lights with a finite range.
+	 */
+	int boundedCount() {
+		return boundedCount;
+	}
+
+	int cellsCount() {
+		return cells == null ? 0 : cells.length;
+	}
+}
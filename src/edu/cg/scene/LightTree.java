@@ -0,0 +1,184 @@
+package edu.cg.scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+
+/**
+ * A binary tree over the point lights (and spotlights) of a scene, which picks a light for a shaded point with a
+ * probability that estimates the contribution of the light to the point (see Scene.initLightSamples).
+ * Each node keeps the total intensity of its lights, the sphere bounding their positions and the weakest decay
+ * factors among them. A light is picked by walking down from the root, choosing each child by its intensity over
+ * the decay at its distance from the point, so picking a light takes time logarithmic in the number of lights.
+ * Lights without a position (directional lights) aren't in the tree, and are evaluated at every point.
+ * The tree is stored in flat arrays (the left child of a node is always the next node), like the BVH.
+ */
+class LightTree {
+	private final Light[] lights;
+	//the lights which aren't in the tree
+	private final int[] unsampled;
+	private final int sampledCount;
+
+	//node data: the center and radius of the bounding sphere of the lights positions, the total intensity
+	//(the strongest channel of each light) and the weakest decay factors of the lights
+	private final double[] centers;
+	private final double[] radii;
+	private final double[] power;
+	private final double[] kq, kl, kc;
+	//the right child of an inner node, or -1 for leaves
+	private final int[] right;
+	//the light of a leaf, or -1 for inner nodes
+	private final int[] light;
+	private int nodesCount = 0;
+
+	//the position, strongest intensity channel and decay factors of each light, by its position in the scene
+	private double[] lightPositions, lightPowers, lightDecays;
+
+	LightTree(List<Light> lights) {
+		this.lights = lights.toArray(new Light[0]);
+		List<Integer> sampledIndices = new ArrayList<>();
+		List<Integer> unsampledIndices = new ArrayList<>();
+		for(int i = 0; i < this.lights.length; ++i)
+			(this.lights[i] instanceof PointLight ? sampledIndices : unsampledIndices).add(i);
+		unsampled = unsampledIndices.stream().mapToInt(Integer::intValue).toArray();
+		sampledCount = sampledIndices.size();
+
+		int capacity = Math.max(1, 2 * sampledCount - 1);
+		centers = new double[3 * capacity];
+		radii = new double[capacity];
+		power = new double[capacity];
+		kq = new double[capacity];
+		kl = new double[capacity];
+		kc = new double[capacity];
+		right = new int[capacity];
+		light = new int[capacity];
+		if(sampledCount > 0) {
+			lightPositions = new double[3 * this.lights.length];
+			lightPowers = new double[this.lights.length];
+			lightDecays = new double[3 * this.lights.length];
+			for(int i : sampledIndices) {
+				PointLight pointLight = (PointLight)this.lights[i];
+				System.arraycopy(pointLight.position().asArray(), 0, lightPositions, 3 * i, 3);
+				Vec intensity = pointLight.intensity();
+				lightPowers[i] = Math.max(0, Math.max(intensity.x, Math.max(intensity.y, intensity.z)));
+				System.arraycopy(pointLight.decayFactors(), 0, lightDecays, 3 * i, 3);
+			}
+			build(sampledIndices.toArray(new Integer[0]), 0, sampledCount);
+			//only needed while building
+			lightPositions = lightPowers = lightDecays = null;
+		}
+	}
+
+	/**
+	 * Builds the subtree over the lights in the given range, split at the median of the longest axis of their positions.
+	 * @return the index of the root of the subtree
+	 */
+	private int build(Integer[] indices, int from, int to) {
+		int node = nodesCount++;
+		double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+		double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		double nodePower = 0, nodeKq = Double.POSITIVE_INFINITY, nodeKl = Double.POSITIVE_INFINITY, nodeKc = Double.POSITIVE_INFINITY;
+		for(int i = from; i < to; ++i) {
+			int index = indices[i];
+			for(int axis = 0; axis < 3; ++axis) {
+				min[axis] = Math.min(min[axis], lightPositions[3 * index + axis]);
+				max[axis] = Math.max(max[axis], lightPositions[3 * index + axis]);
+			}
+			nodePower += lightPowers[index];
+			nodeKq = Math.min(nodeKq, lightDecays[3 * index]);
+			nodeKl = Math.min(nodeKl, lightDecays[3 * index + 1]);
+			nodeKc = Math.min(nodeKc, lightDecays[3 * index + 2]);
+		}
+		double radiusSqr = 0;
+		for(int axis = 0; axis < 3; ++axis) {
+			centers[3 * node + axis] = (min[axis] + max[axis]) / 2;
+			radiusSqr += (max[axis] - min[axis]) * (max[axis] - min[axis]) / 4;
+		}
+		radii[node] = Math.sqrt(radiusSqr);
+		power[node] = nodePower;
+		kq[node] = nodeKq;
+		kl[node] = nodeKl;
+		kc[node] = nodeKc;
+
+		if(to - from == 1) {
+			right[node] = -1;
+			light[node] = indices[from];
+			return node;
+		}
+		int axis = max[0] - min[0] >= max[1] - min[1] && max[0] - min[0] >= max[2] - min[2] ? 0 :
+			max[1] - min[1] >= max[2] - min[2] ? 1 : 2;
+		Arrays.sort(indices, from, to, Comparator.comparingDouble(i -> lightPositions[3 * i + axis]));
+		int mid = (from + to) >>> 1;
+		light[node] = -1;
+		build(indices, from, mid);
+		right[node] = build(indices, mid, to);
+		return node;
+	}
+
+	/**
+	 * @return the estimated contribution of the lights of the node to the point: their intensity over the
+	 * decay at the distance of the point from their center (but not less than their radius).
+	 */
+	private double importance(int node, Point point) {
+		double dx = point.x - centers[3 * node], dy = point.y - centers[3 * node + 1], dz = point.z - centers[3 * node + 2];
+		double d = Math.max(Math.sqrt(dx * dx + dy * dy + dz * dz), radii[node]);
+		return power[node] / (kc[node] + kl[node] * d + kq[node] * d * d);
+	}
+
+	/**
+	 * Picks a light of the tree for the given point.
+	 * @param u - a uniform random number in [0, 1)
+	 * @param ctx - the context of the rendering thread, whose lightProbability is set to the probability of the picked light
+	 * @return the position of the picked light in the scene, or -1 if no light of the tree can illuminate the point.
+	 */
+	int sample(Point point, double u, RenderContext ctx) {
+		if(sampledCount == 0 || power[0] <= 0)
+			return -1;
+		double probability = 1;
+		int node = 0;
+		while(right[node] >= 0) {
+			double left = importance(node + 1, point), total = left + importance(right[node], point);
+			if(!(total > 0))
+				return -1;
+			double pLeft = left / total;
+			if(u < pLeft) {
+				u /= pLeft;
+				probability *= pLeft;
+				node = node + 1;
+			} else {
+				u = (u - pLeft) / (1 - pLeft);
+				probability *= 1 - pLeft;
+				node = right[node];
+			}
+			//keeps u in [0, 1) despite rounding
+			u = Math.min(u, Math.nextDown(1.0));
+		}
+		ctx.lightProbability = probability;
+		return light[node];
+	}
+
+	/**
+	 * @return the positions of the lights which aren't in the tree, in the order of the scene.
+	 */
+	int[] unsampled() {
+		return unsampled;
+	}
+
+	Light light(int index) {
+		return lights[index];
+	}
+
+	int sampledCount() {
+		return sampledCount;
+	}
+
+	int nodesCount() {
+		return nodesCount;
+	}
+}
@@ -0,0 +1,57 @@
+package edu.cg.scene;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Renders regions of an image of a scene one after the other, e.g. the tiles handed to a worker process
+ * (see RenderWorker). Everything that doesn't depend on the region (the compiled scene, the BVH, the lights
+ * and the thread pool) is prepared once by Scene.prepareRegions, and released by close, which also logs the
+ * metrics of all the regions. The scene mustn't be rendered in any other way until the renderer is closed.
+ */
+public class RegionRenderer implements AutoCloseable {
+	private final Scene scene;
+	private final int imgWidth, imgHeight;
+	private final double viewPlainWidth;
+	private final long start = System.nanoTime();
+	private long raysCount = 0;
+	private boolean closed = false;
+
+	RegionRenderer(Scene scene, int imgWidth, int imgHeight, double viewPlainWidth) {
+		this.scene = scene;
+		this.imgWidth = imgWidth;
+		this.imgHeight = imgHeight;
+		this.viewPlainWidth = viewPlainWidth;
+	}
+
+	/**
+	 * Renders a region of the image, exactly like Scene.render with the same region.
+	 * @return an image of the size of the region
+	 */
+	public BufferedImage render(Rectangle region) throws InterruptedException, ExecutionException {
+		if(closed)
+			throw new IllegalStateException("The renderer has been closed");
+		if(region.isEmpty() || !new Rectangle(0, 0, imgWidth, imgHeight).contains(region))
+			throw new IllegalArgumentException("The region " + region + " isn't inside the image");
+		long before = scene.raysTraced();
+		BufferedImage img = scene.renderFrame(imgWidth, imgHeight, viewPlainWidth, region, null);
+		raysCount = scene.raysTraced() - before;
+		return img;
+	}
+
+	/**
+	 * @return the number of rays (including shadow rays) traced by the last render of a region.
+	 */
+	public long getRaysCount() {
+		return raysCount;
+	}
+
+	@Override
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		scene.release(System.nanoTime() - start, false);
+	}
+}
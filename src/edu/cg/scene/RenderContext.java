@@ -0,0 +1,102 @@
+package edu.cg.scene;
+
+import java.util.Arrays;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.RayPacket;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Per-thread state of a render.
+ * Holds scratch registers which the shading code overwrites in place instead of allocating
+ * temporary vectors. A context is only ever used by the thread that owns it.
+ */
+class RenderContext {
+	//the ray types, indices into the rays counters
+	static final int PRIMARY = 0;
+	static final int REFLECTION = 1;
+	static final int REFRACTION = 2;
+	static final int SHADOW = 3;
+	
+	//scratch registers, their values are only valid until the next shading step
+	final Vec diffuse = new Vec();
+	final Vec specular = new Vec();
+	final Vec reflected = new Vec();
+	
+	//the surface hit by the last primary ray traced by this thread (null if it hit nothing),
+	//and the instance key of the hit (see Hit.getInstanceKey)
+	Surface primarySurface = null;
+	long primaryInstance = 0;
+	//the closest hit of the last primary ray traced by this thread (null if it hit nothing)
+	Hit primaryHit = null;
+	
+	//the counters of the rays traced by this thread: by ray type, by recursion level (shadow rays excluded),
+	//and the intersection tests by shape type (see CompiledScene)
+	final long[] rays = new long[RenderMetrics.RAY_TYPES.length];
+	final long[] depths;
+	final long[] tests = new long[CompiledScene.TYPE_NAMES.length];
+	
+	//the last surface found blocking each light (by the position of the light in the scene), or -1.
+	//it is tested first by the next shadow ray to the same light, which is likely to be blocked by it too.
+	final int[] lastOccluders;
+	long occluderCacheHits = 0;
+	long occluderCacheLookups = 0;
+	
+	//the lights evaluated at hit points, and the lights skipped since the hit point was out of their range
+	long lightsEvaluated = 0;
+	long lightsCulled = 0;
+	
+	//the probability of the last light picked by the light tree (see LightTree.sample)
+	double lightProbability = 1;
+	//the state of the random numbers of light sampling, which is seeded by each primary ray,
+	//so the images don't depend on the order the pixels are rendered in
+	private long randomState = 0;
+	
+	/**
+	 * Seeds the random numbers by the position of a primary ray on the image.
+	 */
+	void seed(double x, double y) {
+		randomState = Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(y);
+	}
+	
+	/**
+	 * @return the next uniform random number in [0, 1) (the SplitMix64 generator)
+	 */
+	double random() {
+		long z = (randomState += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z ^= z >>> 31;
+		return (z >>> 11) * 0x1.0p-53;
+	}
+	
+	RenderContext(int maxRecursionLevel, int lightsCount) {
+		depths = new long[Math.max(0, maxRecursionLevel)];
+		lastOccluders = new int[lightsCount];
+		Arrays.fill(lastOccluders, -1);
+	}
+	
+	//the reflected and refracted rays which weren't traced since their contribution was negligible
+	long raysTerminated = 0;
+	
+	void countRay(int type, int recursionLevel) {
+		++rays[type];
+		++depths[recursionLevel];
+	}
+	
+	//the primary rays packet and the pixels of its rays, allocated on the first use
+	private RayPacket packet = null;
+	int[] packetPixels = null;
+	
+	/**
+	 * @return an empty packet that can hold the given number of rays.
+	 */
+	RayPacket packet(int capacity) {
+		if(packet == null || packet.capacity < capacity) {
+			packet = new RayPacket(capacity);
+			packetPixels = new int[2 * capacity];
+		}
+		return packet;
+	}
+}
@@ -0,0 +1,99 @@
+package edu.cg.scene;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import edu.cg.Logger;
+
+/**
+ * A handle of a render running in the background (see Scene.renderInBackground).
+ * Jobs run one after the other on a single background thread, so a new job never starts its
+ * thread pool while the pool of a previous job is still running.
+ * Cancelling a running job stops it before its next tile, and shuts its thread pool down.
+ */
+public class RenderJob implements Future<BufferedImage> {
+	private static final ExecutorService JOBS_QUEUE = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "render-jobs");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final FutureTask<BufferedImage> task;
+	private volatile boolean cancelRequested = false;
+	private volatile boolean lookedUp = false;
+
+	RenderJob(Scene scene, int imgWidth, int imgHeight, double viewPlainWidth, Logger logger,
+			Supplier<BufferedImage> lookup, Consumer<RenderJob> listener) {
+		task = new FutureTask<BufferedImage>(() -> {
+			BufferedImage img = lookup == null ? null : lookup.get();
+			if(img != null) {
+				lookedUp = true;
+				return img;
+			}
+			return scene.render(imgWidth, imgHeight, viewPlainWidth, logger, this);
+		}) {
+			@Override
+			protected void done() {
+				if(listener != null)
+					listener.accept(RenderJob.this);
+			}
+		};
+	}
+
+	void start() {
+		JOBS_QUEUE.execute(task);
+	}
+
+	/**
+	 * @return true if the image was found by the lookup of the job, rather than rendered.
+	 */
+	public boolean isLookedUp() {
+		return lookedUp;
+	}
+
+	/**
+	 * Checked by the render before each tile.
+	 */
+	boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	/**
+	 * Cancels the job. A job that hasn't started yet will never start, and a running job stops
+	 * before its next tile. The rendering threads are never interrupted in the middle of a tile.
+	 * @param mayInterruptIfRunning - ignored
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		cancelRequested = true;
+		return task.cancel(false);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return task.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		return task.isDone();
+	}
+
+	@Override
+	public BufferedImage get() throws InterruptedException, ExecutionException {
+		return task.get();
+	}
+
+	@Override
+	public BufferedImage get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return task.get(timeout, unit);
+	}
+}
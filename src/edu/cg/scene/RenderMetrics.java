@@ -0,0 +1,137 @@
+package edu.cg.scene;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * The statistics of a single render: the rays traced by type, the intersection tests by shape type,
+ * the recursion depths of the traced rays and the time spent in each phase.
+ * The counters are collected per rendering thread (see RenderContext) without any synchronization,
+ * and are summed once the render is done.
+ */
+public class RenderMetrics {
+	static final String[] RAY_TYPES = {"primary", "reflection", "refraction", "shadow"};
+
+	private final String scene;
+	private final int width, height, threads;
+	private boolean cancelled = false;
+	private double totalSeconds = 0;
+	private double raysPerSecond = 0;
+	private long totalRays = 0;
+	//the reflected and refracted rays which weren't traced since their contribution was negligible
+	private long raysTerminated = 0;
+	private final Map<String, Long> rays = new LinkedHashMap<>();
+	private final Map<String, Long> intersectionTests = new LinkedHashMap<>();
+	//the number of rays (shadow rays excluded) traced in each recursion level
+	private final long[] depthHistogram;
+	private final Map<String, Double> phasesSeconds = new LinkedHashMap<>();
+	//the shadow rays which were checked against the last occluder of their light first, and how many were blocked by it
+	private long occluderCacheLookups = 0;
+	private long occluderCacheHits = 0;
+	//the lights evaluated at hit points, and the lights skipped since the hit point was out of their range
+	private long lightsEvaluated = 0;
+	private long lightsCulled = 0;
+
+	RenderMetrics(String scene, int width, int height, int threads, int maxRecursionLevel) {
+		this.scene = scene;
+		this.width = width;
+		this.height = height;
+		this.threads = threads;
+		depthHistogram = new long[Math.max(0, maxRecursionLevel)];
+		for(String type : RAY_TYPES)
+			rays.put(type, 0L);
+		for(String type : CompiledScene.TYPE_NAMES)
+			intersectionTests.put(type, 0L);
+	}
+
+	void addPhase(String phase, long nanos) {
+		phasesSeconds.merge(phase, nanos / 1e9, Double::sum);
+	}
+
+	/**
+	 * Adds the counters of a rendering thread.
+	 */
+	void add(RenderContext ctx) {
+		for(int i = 0; i < RAY_TYPES.length; ++i) {
+			rays.merge(RAY_TYPES[i], ctx.rays[i], Long::sum);
+			totalRays += ctx.rays[i];
+		}
+		for(int i = 0; i < CompiledScene.TYPE_NAMES.length; ++i)
+			intersectionTests.merge(CompiledScene.TYPE_NAMES[i], ctx.tests[i], Long::sum);
+		for(int i = 0; i < depthHistogram.length; ++i)
+			depthHistogram[i] += ctx.depths[i];
+		raysTerminated += ctx.raysTerminated;
+		occluderCacheLookups += ctx.occluderCacheLookups;
+		occluderCacheHits += ctx.occluderCacheHits;
+		lightsEvaluated += ctx.lightsEvaluated;
+		lightsCulled += ctx.lightsCulled;
+	}
+
+	void finish(long totalNanos, boolean cancelled) {
+		this.cancelled = cancelled;
+		totalSeconds = totalNanos / 1e9;
+		raysPerSecond = totalSeconds > 0 ? totalRays / totalSeconds : 0;
+	}
+
+	public long getTotalRays() {
+		return totalRays;
+	}
+
+	public long getRaysTerminated() {
+		return raysTerminated;
+	}
+
+	public long getRays(String type) {
+		return rays.getOrDefault(type, 0L);
+	}
+
+	public double getTotalSeconds() {
+		return totalSeconds;
+	}
+
+	public double getRaysPerSecond() {
+		return raysPerSecond;
+	}
+
+	/**
+	 * @return the fraction of the shadow rays tested with the occluders cache that were blocked by the cached surface
+	 */
+	public double getOccluderCacheHitRate() {
+		return occluderCacheLookups == 0 ? 0 : (double)occluderCacheHits / occluderCacheLookups;
+	}
+
+	/**
+	 * @return the report as a JSON document
+	 */
+	public String toJson() {
+		return new GsonBuilder().setPrettyPrinting().create().toJson(this);
+	}
+
+	/**
+	 * @return a short human readable summary of the report
+	 */
+	@Override
+	public String toString() {
+		String endl = System.lineSeparator();
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s: %dx%d on %d threads in %.3f s%s, %d rays (%.0f rays/s)", scene, width, height,
+				threads, totalSeconds, cancelled ? " (cancelled)" : "", totalRays, raysPerSecond)).append(endl);
+		sb.append("Rays: ").append(rays).append(", not traced due to negligible contribution: ").append(raysTerminated).append(endl);
+		sb.append("Intersection tests: ").append(intersectionTests).append(endl);
+		if(occluderCacheLookups > 0)
+			sb.append(String.format("Occluders cache: %d hits of %d lookups (%.1f%%)", occluderCacheHits,
+					occluderCacheLookups, 100 * getOccluderCacheHitRate())).append(endl);
+		if(lightsCulled > 0)
+			sb.append(String.format("Lights: %d evaluated, %d out of range (%.1f%%)", lightsEvaluated, lightsCulled,
+					100.0 * lightsCulled / (lightsEvaluated + lightsCulled))).append(endl);
+		sb.append("Rays per recursion level:");
+		for(int i = 0; i < depthHistogram.length; ++i)
+			sb.append(' ').append(i).append('=').append(depthHistogram[i]);
+		sb.append(endl).append("Phases:");
+		for(Map.Entry<String, Double> phase : phasesSeconds.entrySet())
+			sb.append(String.format(" %s=%.3fs", phase.getKey(), phase.getValue()));
+		return sb.toString();
+	}
+}
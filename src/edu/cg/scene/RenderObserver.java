@@ -0,0 +1,33 @@
+package edu.cg.scene;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives progress notifications while a scene is being rendered.
+ * The notifications are sent from the rendering threads, so implementations must be thread safe.
+ */
+public interface RenderObserver {
+	/**
+	 * Invoked each time a tile of the image has been rendered into the frame buffer.
+	 * @param x - the x coordinate of the top left pixel of the tile
+	 * @param y - the y coordinate of the top left pixel of the tile
+	 * @param width - the width of the tile in pixels
+	 * @param height - the height of the tile in pixels
+	 * @param tilesDone - the number of tiles that were rendered so far (including this one)
+	 * @param tilesCount - the total number of tiles in the image
+	 */
+	public default void tileRendered(int x, int y, int width, int height, int tilesDone, int tilesCount) {
+	}
+	
+	/**
+	 * Invoked each time a rendering pass over the whole image has been completed.
+	 * In progressive mode the first passes render blocks of pixels with a single sample each,
+	 * so the image is a coarse preview until the last pass.
+	 * The same image is updated in place by the following passes (and may change while it is being drawn).
+	 * @param img - the rendered image
+	 * @param pass - the number of the pass which has been completed (starting from 1)
+	 * @param passesCount - the total number of passes
+	 */
+	public default void frameUpdated(BufferedImage img, int pass, int passesCount) {
+	}
+}
@@ -1,18 +1,42 @@
 package edu.cg.scene;
 
-import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.google.gson.Gson;
 
 import edu.cg.Logger;
 import edu.cg.algebra.*;
 import edu.cg.scene.camera.PinholeCamera;
 import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.objects.Instance;
+import edu.cg.scene.objects.Material;
 import edu.cg.scene.objects.Surface;
 
 public class Scene {
@@ -27,6 +51,25 @@ public class Scene {
 	private Vec backgroundColor = new Vec(0, 0.5, 1); //blue sky
 	private List<Light> lightSources = new LinkedList<>();
 	private List<Surface> surfaces = new LinkedList<>();
+	//named groups of surfaces, placed in the scene by instance shapes
+	private Map<String, List<Surface>> groups = new LinkedHashMap<>();
+	
+	//rendering options (not part of the scene description)
+	private transient int tileSize = 32;
+	private transient int threadsCount = 0; //0 means one thread per available processor
+	private transient ExecutorStrategy executorStrategy = ExecutorStrategy.FORK_JOIN;
+	private transient RenderObserver observer = null;
+	private transient boolean progressive = false;
+	private transient double adaptiveThreshold = 0.1;
+	private transient int packetSize = 1; //1 means tracing each primary ray on its own
+	private transient boolean occludersCache = true;
+	private transient double contributionThreshold = 0; //0 only skips rays which can't change the pixel
+	private transient double lightCutoff = 0; //0 evaluates every light at every hit
+	private transient int lightSamples = 0; //0 means evaluating every light at every hit
+	private transient boolean relighting = false;
+	
+	//the block sizes of the progressive passes, the last pass must have blocks of a single pixel
+	private static final int[] PROGRESSIVE_BLOCKS = {8, 4, 2, 1};
 
 	
 	//MARK: initializers
@@ -35,6 +78,11 @@ public class Scene {
 		return this;
 	}
 	
+	public Scene initCamera(PinholeCamera camera) {
+		this.camera = camera;
+		return this;
+	}
+	
 	public Scene initAmbient(Vec ambient) {
 		this.ambient = ambient;
 		return this;
@@ -52,6 +100,25 @@ public class Scene {
 	
 	public Scene addSurface(Surface surface) {
 		surfaces.add(surface);
+		readCompiled = null;
+		return this;
+	}
+	
+	/**
+	 * Sets the compiled form of the surfaces, which was read with them (see BinaryScene.read).
+	 * It is rendered instead of compiling the surfaces, until a surface is added.
+	 */
+	Scene initReadCompiled(CompiledScene readCompiled) {
+		this.readCompiled = readCompiled;
+		return this;
+	}
+	
+	/**
+	 * Adds a named group of surfaces. The group isn't rendered by itself: it is placed in the scene
+	 * (any number of times) by surfaces whose shape is an Instance of the group.
+	 */
+	public Scene addGroup(String name, List<Surface> surfaces) {
+		groups.put(name, surfaces);
 		return this;
 	}
 	
@@ -80,6 +147,164 @@ public class Scene {
 		return this;
 	}
 	
+	/**
+	 * Sets the size (in pixels) of the square tiles the image is split into while rendering.
+	 * Each tile is rendered by a single task.
+	 */
+	public Scene initTileSize(int tileSize) {
+		if(tileSize < 1)
+			throw new IllegalArgumentException("Tile size must be positive");
+		this.tileSize = tileSize;
+		return this;
+	}
+	
+	/**
+	 * Sets the threads the tiles are rendered on (see ExecutorStrategy).
+	 * @throws IllegalArgumentException if the strategy isn't supported by the running Java version
+	 */
+	public Scene initExecutorStrategy(ExecutorStrategy executorStrategy) {
+		if(executorStrategy == null)
+			throw new IllegalArgumentException("Executor strategy can't be null");
+		if(!executorStrategy.isAvailable())
+			throw new IllegalArgumentException(executorStrategy + " isn't supported by Java " +
+					Runtime.version().feature() + ", it needs Java 21 or later");
+		this.executorStrategy = executorStrategy;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of rendering threads. 0 means one thread per available processor.
+	 */
+	public Scene initThreadsCount(int threadsCount) {
+		if(threadsCount < 0)
+			throw new IllegalArgumentException("Threads count can't be negative");
+		this.threadsCount = threadsCount;
+		return this;
+	}
+	
+	/**
+	 * Sets whether the image is rendered progressively: a coarse pass where each traced pixel
+	 * fills an 8x8 block first, and then passes that refine the blocks down to single pixels.
+	 * Every pixel is still traced exactly once, and each pass is published to the render observer.
+	 */
+	public Scene initProgressive(boolean progressive) {
+		this.progressive = progressive;
+		return this;
+	}
+	
+	/**
+	 * Sets the contrast above which a pixel is supersampled when the anti aliasing factor is above 1.
+	 * A pixel is supersampled if one of its color channels differs from a neighbour pixel by more than the
+	 * threshold (colors are in the range [0, 1]), or if the neighbour pixel shows a different surface.
+	 */
+	public Scene initAdaptiveThreshold(double adaptiveThreshold) {
+		if(adaptiveThreshold < 0)
+			throw new IllegalArgumentException("Adaptive threshold can't be negative");
+		this.adaptiveThreshold = adaptiveThreshold;
+		return this;
+	}
+	
+	/**
+	 * Sets whether renders keep the primary hits of each pixel (see GBuffer), so a following render of the
+	 * same camera and geometry only shades the stored hits: changes to the lights or to the materials are
+	 * rendered without tracing the primary rays again. The primary rays are traced again automatically once
+	 * the camera, the image size or a shape changes. Secondary (reflected, refracted and shadow) rays are
+	 * always traced.
+	 */
+	public Scene initRelighting(boolean relighting) {
+		this.relighting = relighting;
+		if(!relighting)
+			gBuffer = null;
+		return this;
+	}
+	
+	/**
+	 * Takes the primary hits kept by the last render of another scene, e.g. of the same scene file loaded again
+	 * after its lights were edited. They are used by the next render in relighting mode only if the camera and
+	 * the geometry of this scene are the same.
+	 */
+	public Scene initGBufferOf(Scene previous) {
+		gBuffer = previous.gBuffer;
+		return this;
+	}
+	
+	/**
+	 * Sets the side (in pixels) of the square packets the primary rays are traced in.
+	 * The rays of a packet are intersected with the scene together, while their shading
+	 * (and every secondary ray) is still traced one ray at a time. 1 disables packet tracing.
+	 */
+	public Scene initPacketSize(int packetSize) {
+		if(packetSize < 1)
+			throw new IllegalArgumentException("Packet size must be positive");
+		this.packetSize = packetSize;
+		return this;
+	}
+	
+	/**
+	 * Sets whether each rendering thread remembers the last surface found blocking each light,
+	 * and tests it first before searching all the surfaces for a blocker.
+	 */
+	public Scene initOccludersCache(boolean occludersCache) {
+		this.occludersCache = occludersCache;
+		return this;
+	}
+	
+	/**
+	 * Sets the smallest weight of a reflected or refracted ray which is still traced.
+	 * The weight of a ray is the product of the reflection and refraction intensities along its path
+	 * from the camera. Rays of surfaces whose intensity is 0 are never traced, since they can't change the pixel
+	 * at all, and the default threshold of 0 skips only those. A skipped ray changes each color component of
+	 * the pixel by up to its weight times the color it would have seen. That color isn't bounded by 1, since
+	 * every light adds its diffuse and specular terms to it, so a threshold of half an 8-bit step (0.5 / 255)
+	 * can still change pixels by a level or more, e.g. 170 pixels of scene 4 at 160x160.
+	 */
+	public Scene initContributionThreshold(double contributionThreshold) {
+		if(contributionThreshold < 0)
+			throw new IllegalArgumentException("Contribution threshold can't be negative");
+		this.contributionThreshold = contributionThreshold;
+		return this;
+	}
+	
+	/**
+	 * Sets the intensity below which a light is ignored. Lights whose intensity decays with the distance
+	 * (point lights and spotlights) are only evaluated at points within their range (see Light.range),
+	 * which are found with a grid over the ranges of the lights (see LightGrid). 0, the default, evaluates
+	 * every light at every point, so the image is exact.
+	 * Every ignored light could have added up to the cutoff times the diffuse and specular coefficients of the
+	 * material to each channel, and these errors add up over the ignored lights of a point, so a point in the
+	 * reach of many dim lights can change by much more than the cutoff. E.g. a cutoff of half an 8-bit step
+	 * (0.5 / 255) changes 7770 of the 14400 pixels of Scenes.lampsScene(300) at 120x120, by up to 4 levels.
+	 */
+	public Scene initLightCutoff(double lightCutoff) {
+		if(lightCutoff < 0)
+			throw new IllegalArgumentException("Light cutoff can't be negative");
+		this.lightCutoff = lightCutoff;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of point lights (and spotlights) sampled at each hit point. If positive, each hit point
+	 * traces this number of shadow rays to lights picked by their estimated contribution to the point
+	 * (see LightTree), and weighs each light by the inverse of its probability, instead of evaluating all the
+	 * lights. The cost of a hit then hardly depends on the number of lights, at the price of noise, which
+	 * averages out with more anti aliasing samples. Directional lights are always evaluated.
+	 * 0 evaluates every light (with the light cutoff, see initLightCutoff).
+	 */
+	public Scene initLightSamples(int lightSamples) {
+		if(lightSamples < 0)
+			throw new IllegalArgumentException("Light samples can't be negative");
+		this.lightSamples = lightSamples;
+		return this;
+	}
+	
+	/**
+	 * Sets an observer that is notified each time a tile or a pass has been rendered (may be null).
+	 */
+	public Scene initRenderObserver(RenderObserver observer) {
+		this.observer = observer;
+		return this;
+	}
+	
 	//MARK: getters
 	public String getName() {
 		return name;
@@ -101,6 +326,75 @@ public class Scene {
 		return renderReflections;
 	}
 	
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	public int getThreadsCount() {
+		return threadsCount;
+	}
+	
+	public ExecutorStrategy getExecutorStrategy() {
+		return executorStrategy;
+	}
+	
+	public boolean isProgressive() {
+		return progressive;
+	}
+	
+	public double getAdaptiveThreshold() {
+		return adaptiveThreshold;
+	}
+	
+	public boolean isRelighting() {
+		return relighting;
+	}
+	
+	public int getPacketSize() {
+		return packetSize;
+	}
+	
+	public boolean isOccludersCache() {
+		return occludersCache;
+	}
+	
+	public double getContributionThreshold() {
+		return contributionThreshold;
+	}
+	
+	public double getLightCutoff() {
+		return lightCutoff;
+	}
+	
+	public int getLightSamples() {
+		return lightSamples;
+	}
+	
+	//the description of the scene, for the scene file formats of this package
+	PinholeCamera getCamera() {
+		return camera;
+	}
+	
+	Vec getAmbient() {
+		return ambient;
+	}
+	
+	Vec getBackgroundColor() {
+		return backgroundColor;
+	}
+	
+	List<Light> getLightSources() {
+		return lightSources;
+	}
+	
+	List<Surface> getSurfaces() {
+		return surfaces;
+	}
+	
+	Map<String, List<Surface>> getGroups() {
+		return groups;
+	}
+	
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator(); 
@@ -114,116 +408,880 @@ public class Scene {
 	}
 	
 	private transient ExecutorService executor = null;
+	//set for virtual threads only: bounds the number of tiles rendered at once, and keeps the contexts of the
+	//finished tiles, since a virtual thread renders a single tile
+	private transient Semaphore tilePermits = null;
+	private transient Queue<RenderContext> freeContexts = null;
 	private transient Logger logger = null;
+	private transient CompiledScene compiled = null;
+	//the surfaces as they were compiled when the scene was read from a binary scene file (see initReadCompiled)
+	private transient CompiledScene readCompiled = null;
+	private transient BoundingVolumeHierarchy bvh = null;
+	private transient LightGrid lightGrid = null;
+	private transient LightTree lightTree = null;
+	private transient ThreadLocal<RenderContext> contexts = null;
+	//the contexts of all the rendering threads, whose counters are summed into the metrics of the render
+	private transient Queue<RenderContext> allContexts = null;
+	private transient RenderMetrics metrics = null;
+	//the primary hits of the last render in relighting mode, kept between renders
+	private transient volatile GBuffer gBuffer = null;
+	
+	/**
+	 * @return the number of rays (including shadow rays) traced by the last render.
+	 */
+	public long getRaysCount() {
+		return metrics == null ? 0 : metrics.getTotalRays();
+	}
+	
+	/**
+	 * @return the metrics of the last render (null if the scene hasn't been rendered yet).
+	 */
+	public RenderMetrics getMetrics() {
+		return metrics;
+	}
 	
 	private void initSomeFields(int imgWidth, int imgHeight, Logger logger) {
 		this.logger = logger;
+		bindInstances(surfaces, new HashSet<>(), new HashSet<>());
+		allContexts = new ConcurrentLinkedQueue<>();
+		contexts = ThreadLocal.withInitial(this::newContext);
+		
+		long start = System.nanoTime();
+		compiled = readCompiled != null ? readCompiled : new CompiledScene(surfaces);
+		long compileTime = System.nanoTime() - start;
+		metrics.addPhase("compile", compileTime);
+		this.logger.log("Compiled " + compiled.size() + " surfaces with " + compiled.materialsCount() +
+				" materials in " + compileTime / 1000000 + " ms.");
+		
+		start = System.nanoTime();
+		bvh = new BoundingVolumeHierarchy(compiled);
+		long buildTime = System.nanoTime() - start;
+		metrics.addPhase("bvh", buildTime);
+		this.logger.log("Built BVH over " + bvh.size() + " surfaces (" + bvh.unboundedSize() +
+				" unbounded, " + bvh.nodesCount() + " nodes) in " + buildTime / 1000000 + " ms.");
+		
+		start = System.nanoTime();
+		if(lightSamples > 0) {
+			lightTree = new LightTree(lightSources);
+			buildTime = System.nanoTime() - start;
+			this.logger.log("Built light tree of " + lightTree.nodesCount() + " nodes over " + lightTree.sampledCount() +
+					" of " + lightSources.size() + " lights in " + buildTime / 1000000 + " ms, sampling " + lightSamples +
+					" lights per hit.");
+		} else {
+			lightGrid = new LightGrid(lightSources, lightCutoff);
+			buildTime = System.nanoTime() - start;
+			this.logger.log("Built light grid of " + lightGrid.cellsCount() + " cells over " + lightGrid.boundedCount() +
+					" of " + lightSources.size() + " lights in " + buildTime / 1000000 + " ms.");
+		}
+		metrics.addPhase("lights", buildTime);
 	}
 	
+	/**
+	 * Binds the instances in the given surfaces (and in the groups they use) to the surfaces of their groups.
+	 * @param path - the groups which contain the given surfaces, used to detect groups that contain themselves
+	 * @param bound - the groups whose instances were already bound
+	 */
+	private void bindInstances(List<Surface> surfaces, Set<String> path, Set<String> bound) {
+		for(Surface surface : surfaces) {
+			if(!(surface.shape() instanceof Instance))
+				continue;
+			Instance instance = (Instance)surface.shape();
+			List<Surface> group = groups.get(instance.group());
+			if(group == null)
+				throw new IllegalArgumentException("Unknown group: " + instance.group());
+			if(path.contains(instance.group()))
+				throw new IllegalArgumentException("The group " + instance.group() + " contains an instance of itself");
+			if(bound.add(instance.group())) {
+				path.add(instance.group());
+				bindInstances(group, path, bound);
+				path.remove(instance.group());
+			}
+			instance.bind(group);
+		}
+	}
 	
 	public BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth,Logger logger)
 			throws InterruptedException, ExecutionException {
+		return render(imgWidth, imgHeight, viewPlainWidth, logger, null);
+	}
+	
+	/**
+	 * Starts rendering the scene on a background thread and returns immediately.
+	 * Background renders run one at a time: a render requested while another one is running
+	 * starts once the previous one has completed (or has been cancelled).
+	 * @param listener - notified (on the background thread) once the render is done or cancelled, may be null
+	 * @return a handle of the render, which can be used to wait for the image or to cancel the render
+	 */
+	public RenderJob renderInBackground(int imgWidth, int imgHeight, double viewPlainWidth, Logger logger,
+			Consumer<RenderJob> listener) {
+		return renderInBackground(imgWidth, imgHeight, viewPlainWidth, logger, null, listener);
+	}
+	
+	/**
+	 * Like renderInBackground, where the job first looks the image up (e.g. in a cache of renders).
+	 * @param lookup - invoked on the background thread before rendering. If it returns an image, the image is
+	 * the result of the job and the scene isn't rendered (see RenderJob.isLookedUp). May be null.
+	 */
+	public RenderJob renderInBackground(int imgWidth, int imgHeight, double viewPlainWidth, Logger logger,
+			Supplier<BufferedImage> lookup, Consumer<RenderJob> listener) {
+		RenderJob job = new RenderJob(this, imgWidth, imgHeight, viewPlainWidth, logger, lookup, listener);
+		job.start();
+		return job;
+	}
+	
+	BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth, Logger logger, RenderJob job)
+			throws InterruptedException, ExecutionException {
+		return render(imgWidth, imgHeight, viewPlainWidth, new Rectangle(0, 0, imgWidth, imgHeight), logger, job);
+	}
+	
+	/**
+	 * Renders a rectangular region of the image, e.g. a tile of an image rendered by several processes.
+	 * The pixels of the region get the same colors they get when the whole image is rendered,
+	 * except that with anti aliasing, the pixels on the border of the region are supersampled according to
+	 * their neighbours inside the region only. Render a region with a margin of one pixel and crop it to get
+	 * exactly the same pixels.
+	 * @param region - the region of the image to render
+	 * @return an image of the size of the region
+	 */
+	public BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth, Rectangle region, Logger logger)
+			throws InterruptedException, ExecutionException {
+		return render(imgWidth, imgHeight, viewPlainWidth, region, logger, null);
+	}
+	
+	private BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth, Rectangle region, Logger logger,
+			RenderJob job) throws InterruptedException, ExecutionException {
 		// This method is invoked each time Render Scene button is invoked.
 		// Use it to initialize additional fields you need.
-		initSomeFields(imgWidth, imgHeight, logger);
+		if(region.isEmpty() || !new Rectangle(0, 0, imgWidth, imgHeight).contains(region))
+			throw new IllegalArgumentException("The region " + region + " isn't inside the image");
+		long renderStart = System.nanoTime();
+		prepare(region.width, region.height, logger);
+		try {
+			return renderFrame(imgWidth, imgHeight, viewPlainWidth, region, job);
+		} finally {
+			release(System.nanoTime() - renderStart, job != null && job.isCancelRequested());
+		}
+	}
+	
+	/**
+	 * Renders a sequence of frames of the scene, e.g. the frames of a flythrough, each one from its own camera.
+	 * Everything that doesn't depend on the camera (the compiled scene, the BVH and the thread pool) is
+	 * prepared once for the whole sequence. The camera of the scene is restored once the sequence is done.
+	 * @param cameras - the camera of each frame (see PinholeCamera.path)
+	 * @param frameConsumer - receives each frame (by its index) once it is rendered, on the calling thread.
+	 * The next frame is rendered once it returns, so slow work (like encoding) should be passed on to another thread.
+	 * The metrics of the scene (see getMetrics) sum up all the frames.
+	 */
+	public void renderSequence(List<PinholeCamera> cameras, int imgWidth, int imgHeight, double viewPlainWidth,
+			Logger logger, BiConsumer<Integer, BufferedImage> frameConsumer) throws InterruptedException, ExecutionException {
+		PinholeCamera sceneCamera = camera;
+		long renderStart = System.nanoTime();
+		prepare(imgWidth, imgHeight, logger);
+		try {
+			for(int i = 0; i < cameras.size(); ++i) {
+				camera = cameras.get(i);
+				BufferedImage img = renderFrame(imgWidth, imgHeight, viewPlainWidth, new Rectangle(0, 0, imgWidth, imgHeight), null);
+				this.logger.log("Rendered frame " + (i + 1) + "/" + cameras.size());
+				frameConsumer.accept(i, img);
+			}
+		} finally {
+			camera = sceneCamera;
+			release(System.nanoTime() - renderStart, false);
+		}
+	}
+	
+	/**
+	 * Prepares the scene for rendering regions of the image one after the other (see RegionRenderer),
+	 * e.g. the tiles given to a worker process. Close the returned renderer once all the regions are rendered.
+	 */
+	public RegionRenderer prepareRegions(int imgWidth, int imgHeight, double viewPlainWidth, Logger logger) {
+		prepare(imgWidth, imgHeight, logger);
+		return new RegionRenderer(this, imgWidth, imgHeight, viewPlainWidth);
+	}
+	
+	/**
+	 * Prepares everything a render needs except for the camera.
+	 */
+	private void prepare(int width, int height, Logger logger) {
+		int nThreads = threadsCount > 0 ? threadsCount : Runtime.getRuntime().availableProcessors();
+		nThreads = nThreads < 2 ? 2 : nThreads;
+		metrics = new RenderMetrics(name, width, height, nThreads, maxRecursionLevel);
+		initSomeFields(width, height, logger);
+		switch(executorStrategy) {
+		case VIRTUAL_THREADS:
+			//initExecutorStrategy accepts virtual threads only if the runtime supports them
+			executor = ExecutorStrategy.newVirtualThreadPerTaskExecutor();
+			tilePermits = new Semaphore(nThreads);
+			freeContexts = new ConcurrentLinkedQueue<>();
+			break;
+		case FIXED_POOL:
+			executor = Executors.newFixedThreadPool(nThreads);
+			break;
+		default:
+			executor = new ForkJoinPool(nThreads);
+		}
+		this.logger.log("Intitialize executor. Using " + nThreads + " threads (" + executorStrategy + ") to render " + name);
+	}
+	
+	private RenderContext newContext() {
+		RenderContext ctx = new RenderContext(maxRecursionLevel, lightSources.size());
+		allContexts.add(ctx);
+		return ctx;
+	}
+	
+	/**
+	 * @return the number of rays traced by the rendering threads since the scene was prepared.
+	 */
+	long raysTraced() {
+		long count = 0;
+		for(RenderContext ctx : allContexts)
+			for(long rays : ctx.rays)
+				count += rays;
+		return count;
+	}
+	
+	/**
+	 * Releases what prepare created, and sums up the metrics.
+	 */
+	void release(long renderNanos, boolean cancelled) {
+		if(cancelled)
+			executor.shutdownNow();
+		else
+			executor.shutdown();
 		
-		BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
+		for(RenderContext ctx : allContexts)
+			metrics.add(ctx);
+		metrics.finish(renderNanos, cancelled);
+		for(String line : metrics.toString().split(System.lineSeparator()))
+			this.logger.log(line);
+		
+		executor = null;
+		tilePermits = null;
+		freeContexts = null;
+		this.logger = null;
+		bvh = null;
+		lightGrid = null;
+		lightTree = null;
+		compiled = null;
+		contexts = null;
+		allContexts = null;
+	}
+	
+	/**
+	 * Renders a region of the image from the current camera, once the scene is prepared.
+	 */
+	BufferedImage renderFrame(int imgWidth, int imgHeight, double viewPlainWidth, Rectangle region, RenderJob job)
+			throws InterruptedException, ExecutionException {
+		BufferedImage img = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+		//the tiles are rendered straight into the raster of the image
+		int[] frameBuffer = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
 		camera.initResolution(imgHeight, imgWidth, viewPlainWidth);
-		int nThreads = Runtime.getRuntime().availableProcessors();
-		nThreads = nThreads < 2 ? 2 : nThreads;
-		this.logger.log("Intitialize executor. Using " + nThreads + " threads to render " + name);
-		executor = Executors.newFixedThreadPool(nThreads);
 		
-		@SuppressWarnings("unchecked")
-		Future<Color>[][] futures = (Future<Color>[][])(new Future[imgHeight][imgWidth]);
+		//relighting renders shade the kept primary hits if they were found from the same camera in the same geometry
+		String signature = relighting && maxRecursionLevel > 0 ? geometrySignature(region) : null;
+		GBuffer kept = gBuffer;
+		boolean relight = signature != null && kept != null && kept.signature.equals(signature);
+		if(signature == null)
+			gBuffer = null;
 		
-		this.logger.log("Starting to shoot " +
-			(imgHeight * imgWidth * antiAliasingFactor * antiAliasingFactor) +
-			" rays over " + name);
+		int[] blocks = progressive && !relight ? PROGRESSIVE_BLOCKS : new int[] {1};
+		boolean supersample = antiAliasingFactor > 1;
+		int passesCount = blocks.length + (supersample ? 1 : 0);
+		TileGrid grid = new TileGrid(region, tileSize, frameBuffer, passesCount, job);
+		if(relight) {
+			grid.gBuffer = kept;
+			grid.relight = true;
+			this.logger.log("Relighting " + (region.height * region.width) + " pixels of " + name +
+					" from the kept primary hits in " + grid.tilesCount + " tiles of " + tileSize + "x" + tileSize + " pixels");
+		} else {
+			if(signature != null)
+				grid.gBuffer = new GBuffer(signature, region);
+			this.logger.log("Starting to shoot " + (region.height * region.width) +
+				" primary rays over " + name + " in " + grid.tilesCount + " tiles of " + tileSize + "x" + tileSize + " pixels" +
+				(blocks.length > 1 ? " (" + blocks.length + " progressive passes)" : ""));
+		}
 		
-		for(int y = 0; y < imgHeight; ++y)
-			for(int x = 0; x < imgWidth; ++x)
-				futures[y][x] = calcColor(x, y);
+		for(int pass = 0; pass < blocks.length; ++pass) {
+			grid.block = blocks[pass];
+			grid.skipCoarse = pass > 0;
+			long passStart = System.nanoTime();
+			renderTiles(grid);
+			metrics.addPhase(relight ? "relight" : blocks.length > 1 ? "pass " + (pass + 1) : "primary",
+					System.nanoTime() - passStart);
+			checkCancelled(grid);
+			if(grid.observer != null)
+				grid.observer.frameUpdated(img, pass + 1, passesCount);
+		}
+		//the hits are kept only once every pixel has been traced
+		if(signature != null)
+			gBuffer = grid.gBuffer;
 		
-		this.logger.log("Done shooting rays.");
-		this.logger.log("Waiting for results...");
+		if(supersample) {
+			// Adaptive supersampling: only pixels that differ from their neighbours are traced again
+			long passStart = System.nanoTime();
+			grid.refine = findPixelsToRefine(grid.width, grid.height, grid.frameBuffer, grid.primarySurfaces,
+					grid.primaryInstances, (int)(adaptiveThreshold * 255));
+			int refined = 0;
+			for(boolean r : grid.refine)
+				refined += r ? 1 : 0;
+			this.logger.log("Supersampling " + refined + " of " + grid.refine.length + " pixels (" +
+					String.format("%.1f", 100.0 * refined / grid.refine.length) + "%) with " +
+					antiAliasingFactor * antiAliasingFactor + " samples each");
+			renderTiles(grid);
+			metrics.addPhase("supersampling", System.nanoTime() - passStart);
+			checkCancelled(grid);
+			if(grid.observer != null)
+				grid.observer.frameUpdated(img, passesCount, passesCount);
+		}
 		
-		for(int y = 0; y < imgHeight; ++y)
-			for(int x = 0; x < imgWidth; ++x) {
-				Color color = futures[y][x].get();
-				img.setRGB(x, y, color.getRGB());
+		this.logger.log("Ray tracing of " + name + " has been completed.");
+		
+		return img;
+	}
+	
+	/**
+	 * Renders all the tiles of the grid in the current pass, on the threads of the executor strategy.
+	 * If a tile fails (or the wait is interrupted), the remaining tiles are skipped and the running ones are
+	 * awaited before the failure is thrown, so none of them is left running when the render is released.
+	 */
+	private void renderTiles(TileGrid grid) throws InterruptedException, ExecutionException {
+		if(executor instanceof ForkJoinPool) {
+			ForkJoinPool pool = (ForkJoinPool)executor;
+			try {
+				pool.submit(new TileTask(grid, 0, grid.tilesCount)).get();
+			} catch(ExecutionException | InterruptedException e) {
+				//the failure can be thrown before the subtasks forked to other threads are done
+				grid.failed = true;
+				pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				throw e;
+			}
+			return;
+		}
+		List<Future<?>> tiles = new ArrayList<>(grid.tilesCount);
+		for(int tile = 0; tile < grid.tilesCount; ++tile) {
+			TileTask task = new TileTask(grid, tile, tile + 1);
+			if(tilePermits == null) {
+				tiles.add(executor.submit(() -> task.render(contexts.get())));
+				continue;
 			}
+			tiles.add(executor.submit(() -> {
+				tilePermits.acquire();
+				try {
+					RenderContext ctx = freeContexts.poll();
+					if(ctx == null)
+						ctx = newContext();
+					try {
+						task.render(ctx);
+					} finally {
+						freeContexts.add(ctx);
+					}
+				} finally {
+					tilePermits.release();
+				}
+				return null;
+			}));
+		}
+		try {
+			for(Future<?> tile : tiles)
+				tile.get();
+		} catch(ExecutionException | InterruptedException e) {
+			grid.failed = true;
+			awaitTiles(tiles);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Waits until all the tiles are done, whether they succeed or fail. An interrupt doesn't stop the wait,
+	 * it is kept for the caller instead.
+	 */
+	private static void awaitTiles(List<Future<?>> tiles) {
+		boolean interrupted = false;
+		for(Future<?> tile : tiles) {
+			while(true) {
+				try {
+					tile.get();
+					break;
+				} catch(InterruptedException e) {
+					interrupted = true;
+				} catch(ExecutionException | CancellationException e) {
+					break;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * @return a SHA-256 hash of everything the primary hits of a render depend on: the camera (with its
+	 * resolution), the rendered region, and the shapes of the surfaces and of the groups, in their order.
+	 * Lights and materials aren't part of it. The description is hashed piece by piece, so it is never
+	 * held in memory as a whole.
+	 */
+	private String geometrySignature(Rectangle region) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			//every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+		Gson gson = new Gson();
+		update(digest, gson.toJson(camera) + region);
+		for(Surface surface : surfaces)
+			update(digest, surface.shape().getClass().getName() + gson.toJson(surface.shape()));
+		for(Map.Entry<String, List<Surface>> group : groups.entrySet()) {
+			update(digest, group.getKey());
+			for(Surface surface : group.getValue())
+				update(digest, surface.shape().getClass().getName() + gson.toJson(surface.shape()));
+		}
+		StringBuilder signature = new StringBuilder();
+		for(byte b : digest.digest())
+			signature.append(String.format("%02x", b));
+		return signature.toString();
+	}
+	
+	private static void update(MessageDigest digest, String text) {
+		digest.update(text.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private void checkCancelled(TileGrid grid) {
+		if(grid.isCancelled()) {
+			logger.log("Ray tracing of " + name + " has been cancelled after " + grid.tilesDone.get() + " tiles.");
+			throw new CancellationException("Ray tracing of " + name + " has been cancelled");
+		}
+	}
+	
+	/**
+	 * The tiles partition of the rendered region of the image and the shared frame buffer they are rendered into.
+	 * Pixels are addressed by their coordinates in the whole image.
+	 */
+	private class TileGrid {
+		final int tileSize;
+		//the rendered region: its top left pixel and its size, which is also the size of the frame buffer
+		final int x0, y0, width, height;
+		final int tilesX, tilesCount, passesCount;
+		final int[] frameBuffer;
+		final AtomicInteger tilesDone = new AtomicInteger();
+		//the job of a background render (null otherwise) and the observer the render started with
+		final RenderJob job;
+		final RenderObserver observer;
+		//the surface seen by each pixel of the region and the instance it belongs to, kept for adaptive supersampling
+		final Surface[] primarySurfaces;
+		final long[] primaryInstances;
+		//the pixels to supersample, set for the last pass only
+		boolean[] refine = null;
+		//the primary hits of the pixels: kept by the passes, or shaded instead of tracing if relight is set
+		GBuffer gBuffer = null;
+		boolean relight = false;
+		//set when a tile of the pass failed: the remaining tiles are skipped
+		volatile boolean failed = false;
+		//the current pass: only pixels on multiples of block are traced, each one fills a block x block square.
+		//if skipCoarse is set, the pixels on multiples of 2 * block were traced by the previous pass.
+		int block = 1;
+		boolean skipCoarse = false;
 		
-		executor.shutdown();
+		TileGrid(Rectangle region, int tileSize, int[] frameBuffer, int passesCount, RenderJob job) {
+			this.job = job;
+			this.observer = Scene.this.observer;
+			this.x0 = region.x;
+			this.y0 = region.y;
+			this.width = region.width;
+			this.height = region.height;
+			this.tileSize = tileSize;
+			this.frameBuffer = frameBuffer;
+			this.passesCount = passesCount;
+			tilesX = (width + tileSize - 1) / tileSize;
+			tilesCount = tilesX * ((height + tileSize - 1) / tileSize);
+			primarySurfaces = antiAliasingFactor > 1 ? new Surface[width * height] : null;
+			primaryInstances = antiAliasingFactor > 1 ? new long[width * height] : null;
+		}
 		
-		this.logger.log("Ray tracing of " + name + " has been completed.");
+		boolean isCancelled() {
+			return job != null && job.isCancelRequested();
+		}
 		
-		executor = null;
-		this.logger = null;
+		/**
+		 * @return the position of the pixel in the frame buffer
+		 */
+		int index(int x, int y) {
+			return (y - y0) * width + (x - x0);
+		}
 		
-		return img;
+		void fill(int x, int y, int rgb) {
+			int x1 = Math.min(x + block, x0 + width), y1 = Math.min(y + block, y0 + height);
+			for(int j = y; j < y1; ++j)
+				for(int i = x; i < x1; ++i)
+					frameBuffer[index(i, j)] = rgb;
+		}
+		
+		/**
+		 * Keeps the surface seen by the pixel at the given position, if it is needed for adaptive supersampling.
+		 */
+		void keepPrimary(int index, RenderContext ctx) {
+			if(primarySurfaces == null)
+				return;
+			primarySurfaces[index] = ctx.primarySurface;
+			primaryInstances[index] = ctx.primaryInstance;
+		}
 	}
 	
-	private Future<Color> calcColor(int x, int y) {
-		return executor.submit(() -> {
-			// TODO: You need to re-implement this method if you want to handle
-			//       super-sampling. You're also free to change the given implementation as you like.
-			Point centerPoint = camera.transform(x, y);
-			Ray ray = new Ray(camera.getCameraPosition(), centerPoint);
-			Vec color = calcColor(ray, 0);
-			return color.toColor();
-		});
+	/**
+	 * Renders a range of tiles. Ranges are split in halves until a single tile is left,
+	 * so idle threads of the pool can steal the remaining work of busy ones.
+	 * Executors other than the work stealing pool render single tile tasks (see renderTiles).
+	 */
+	@SuppressWarnings("serial")
+	private class TileTask extends RecursiveAction {
+		private final TileGrid grid;
+		private final int from, to;
+		
+		TileTask(TileGrid grid, int from, int to) {
+			this.grid = grid;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileTask(grid, from, mid), new TileTask(grid, mid, to));
+				return;
+			}
+			render(contexts.get());
+		}
+		
+		/**
+		 * Renders the first tile of the range.
+		 */
+		void render(RenderContext ctx) {
+			//the remaining tiles of a cancelled or failed render are skipped, so the pass completes promptly
+			if(grid.isCancelled() || grid.failed)
+				return;
+			
+			int x0 = grid.x0 + (from % grid.tilesX) * grid.tileSize;
+			int y0 = grid.y0 + (from / grid.tilesX) * grid.tileSize;
+			int x1 = Math.min(x0 + grid.tileSize, grid.x0 + grid.width);
+			int y1 = Math.min(y0 + grid.tileSize, grid.y0 + grid.height);
+			try {
+				if(grid.refine != null)
+					supersampleTile(x0, y0, x1, y1, ctx);
+				else if(grid.relight)
+					relightTile(x0, y0, x1, y1, ctx);
+				else if(packetSize > 1)
+					renderTileInPackets(x0, y0, x1, y1, ctx);
+				else
+					renderTile(x0, y0, x1, y1, ctx);
+			} catch(RuntimeException | Error e) {
+				grid.failed = true;
+				throw e;
+			}
+			
+			int total = grid.tilesCount * grid.passesCount;
+			int done = grid.tilesDone.incrementAndGet();
+			if(grid.observer != null)
+				grid.observer.tileRendered(x0, y0, x1 - x0, y1 - y0, done, total);
+			//log the progress every 10 percents
+			if(done * 10 / total != (done - 1) * 10 / total)
+				logger.log("Rendered " + done + "/" + total + " tiles (" + (done * 100 / total) + "%)");
+		}
+		
+		private void renderTile(int x0, int y0, int x1, int y1, RenderContext ctx) {
+			int block = grid.block, coarse = 2 * block;
+			//the first pixels on multiples of block inside the tile
+			int firstX = (x0 + block - 1) / block * block, firstY = (y0 + block - 1) / block * block;
+			for(int y = firstY; y < y1; y += block)
+				for(int x = firstX; x < x1; x += block) {
+					if(grid.skipCoarse && x % coarse == 0 && y % coarse == 0)
+						continue;
+					grid.fill(x, y, calcColor(x, y, ctx).toColor().getRGB() & 0xFFFFFF);
+					grid.keepPrimary(grid.index(x, y), ctx);
+					if(grid.gBuffer != null)
+						grid.gBuffer.set(grid.index(x, y), ctx.primaryHit);
+				}
+		}
+		
+		/**
+		 * Renders the same pixels as renderTile, where the primary rays of each packetSize x packetSize
+		 * square of traced pixels are intersected with the scene as one packet.
+		 */
+		private void renderTileInPackets(int x0, int y0, int x1, int y1, RenderContext ctx) {
+			int block = grid.block, coarse = 2 * block, span = packetSize * block;
+			int firstX = (x0 + block - 1) / block * block, firstY = (y0 + block - 1) / block * block;
+			Point cameraPosition = camera.getCameraPosition();
+			RayPacket packet = ctx.packet(packetSize * packetSize);
+			int[] pixels = ctx.packetPixels;
+			for(int py = firstY; py < y1; py += span)
+				for(int px = firstX; px < x1; px += span) {
+					packet.reset(cameraPosition);
+					for(int y = py, yEnd = Math.min(py + span, y1); y < yEnd; y += block)
+						for(int x = px, xEnd = Math.min(px + span, x1); x < xEnd; x += block) {
+							if(grid.skipCoarse && x % coarse == 0 && y % coarse == 0)
+								continue;
+							int i = packet.add(camera.transform(x, y));
+							pixels[2 * i] = x;
+							pixels[2 * i + 1] = y;
+						}
+					if(packet.size == 0)
+						continue;
+					
+					bvh.intersect(packet, ctx.tests);
+					for(int i = 0; i < packet.size; ++i) {
+						int x = pixels[2 * i], y = pixels[2 * i + 1];
+						ctx.seed(x, y);
+						grid.fill(x, y, calcColor(packet, i, ctx).toColor().getRGB() & 0xFFFFFF);
+						grid.keepPrimary(grid.index(x, y), ctx);
+						if(grid.gBuffer != null)
+							grid.gBuffer.set(grid.index(x, y), ctx.primaryHit);
+					}
+				}
+		}
+		
+		/**
+		 * Renders the pixels of the tile by shading their kept primary hits, only pixels whose hits
+		 * weren't kept are traced.
+		 */
+		private void relightTile(int x0, int y0, int x1, int y1, RenderContext ctx) {
+			Point cameraPosition = camera.getCameraPosition();
+			for(int y = y0; y < y1; ++y)
+				for(int x = x0; x < x1; ++x) {
+					int i = grid.index(x, y);
+					Vec color;
+					if(!grid.gBuffer.isStored(i)) {
+						color = calcColor(x, y, ctx);
+					} else {
+						ctx.seed(x, y);
+						Hit hit = grid.gBuffer.hit(i, compiled);
+						ctx.primarySurface = hit == null ? null : hit.getSurface();
+						ctx.primaryInstance = 0;
+						color = hit == null ? backgroundColor : shade(new Ray(cameraPosition, camera.transform(x, y)), hit, 0, 1, ctx);
+					}
+					grid.frameBuffer[i] = color.toColor().getRGB() & 0xFFFFFF;
+					grid.keepPrimary(i, ctx);
+				}
+		}
+		
+		private void supersampleTile(int x0, int y0, int x1, int y1, RenderContext ctx) {
+			int factor = antiAliasingFactor;
+			Vec sum = new Vec();
+			for(int y = y0; y < y1; ++y)
+				for(int x = x0; x < x1; ++x) {
+					if(!grid.refine[grid.index(x, y)])
+						continue;
+					// factor x factor samples on a regular grid inside the pixel
+					sum.set(0, 0, 0);
+					for(int j = 0; j < factor; ++j)
+						for(int i = 0; i < factor; ++i) {
+							Vec sample = calcColor(x + (i + 0.5) / factor - 0.5, y + (j + 0.5) / factor - 0.5, ctx);
+							sum.x += clip(sample.x);
+							sum.y += clip(sample.y);
+							sum.z += clip(sample.z);
+						}
+					grid.frameBuffer[grid.index(x, y)] =
+							sum.scaleInPlace(1.0 / (factor * factor)).toColor().getRGB() & 0xFFFFFF;
+				}
+		}
 	}
 	
-	private Vec calcColor(Ray ray, int recursionLevel) {
+	private static double clip(double val) {
+		return Math.min(1, Math.max(0, val));
+	}
+	
+	/**
+	 * Finds the pixels whose color differs from one of their neighbours by more than the adaptive threshold,
+	 * or whose neighbour shows a different surface (e.g. on the silhouette of an object). The surfaces of
+	 * different instances of a group are told apart, although they are the same surface objects.
+	 * @param rgb - the colors of the pixels of the region, row by row
+	 * @param surfaces - the surface seen by each pixel (null for the background)
+	 * @param instances - the instance key of the hit of each pixel (see Hit.getInstanceKey)
+	 * @param threshold - the largest difference of a color component (0 to 255) which isn't refined
+	 * @return whether each pixel has to be supersampled
+	 */
+	static boolean[] findPixelsToRefine(int width, int height, int[] rgb, Surface[] surfaces, long[] instances,
+			int threshold) {
+		boolean[] refine = new boolean[width * height];
+		for(int y = 0; y < height; ++y)
+			for(int x = 0; x < width; ++x) {
+				int i = y * width + x;
+				//each pair of neighbours is compared once: with the right and the bottom neighbours
+				if(x + 1 < width && differ(rgb[i], rgb[i + 1], surfaces[i], surfaces[i + 1],
+						instances[i], instances[i + 1], threshold))
+					refine[i] = refine[i + 1] = true;
+				if(y + 1 < height && differ(rgb[i], rgb[i + width], surfaces[i], surfaces[i + width],
+						instances[i], instances[i + width], threshold))
+					refine[i] = refine[i + width] = true;
+			}
+		return refine;
+	}
+	
+	private static boolean differ(int rgb1, int rgb2, Surface s1, Surface s2, long instance1, long instance2,
+			int threshold) {
+		if(s1 != s2 || instance1 != instance2)
+			return true;
+		for(int shift = 0; shift < 24; shift += 8)
+			if(Math.abs(((rgb1 >> shift) & 0xFF) - ((rgb2 >> shift) & 0xFF)) > threshold)
+				return true;
+		return false;
+	}
+	
+	private Vec calcColor(double x, double y, RenderContext ctx) {
+		ctx.seed(x, y);
+		Point centerPoint = camera.transform(x, y);
+		Ray ray = new Ray(camera.getCameraPosition(), centerPoint);
+		return calcColor(ray, 0, RenderContext.PRIMARY, 1, ctx);
+	}
+	
+	/**
+	 * Shades the i-th primary ray of a packet that has already been intersected with the scene.
+	 * Only the surface the ray hits is intersected again, to get the full hit (normal and side).
+	 */
+	private Vec calcColor(RayPacket packet, int i, RenderContext ctx) {
+		if (this.maxRecursionLevel <= 0)
+			return new Vec();
+		if (packet.hitId[i] < 0) {
+			ctx.countRay(RenderContext.PRIMARY, 0);
+			ctx.primarySurface = null;
+			ctx.primaryInstance = 0;
+			ctx.primaryHit = null;
+			return this.backgroundColor;
+		}
+		Ray ray = packet.ray(i);
+		Hit minHit = compiled.hit(packet.hitId[i], ray);
+		if (minHit == null)
+			return calcColor(ray, 0, RenderContext.PRIMARY, 1, ctx);
+		ctx.countRay(RenderContext.PRIMARY, 0);
+		ctx.primarySurface = minHit.getSurface();
+		ctx.primaryInstance = minHit.getInstanceKey();
+		ctx.primaryHit = minHit;
+		return shade(ray, minHit, 0, 1, ctx);
+	}
+	
+	/**
+	 * @param rayType - the type of the ray (see RenderContext), used for the metrics only
+	 * @param weight - the weight of the ray's color in the pixel (1 for primary rays)
+	 */
+	private Vec calcColor(Ray ray, int recursionLevel, int rayType, double weight, RenderContext ctx) {
 		// Halt condition
 		if (recursionLevel >= this.maxRecursionLevel){
 			return new Vec();
 		}
+		ctx.countRay(rayType, recursionLevel);
 		// Find minimum hit
-		Hit minHit = this.findMinHit(ray);
+		Hit minHit = this.findMinHit(ray, ctx);
+		if (recursionLevel == 0) {
+			ctx.primarySurface = minHit == null ? null : minHit.getSurface();
+			ctx.primaryInstance = minHit == null ? 0 : minHit.getInstanceKey();
+			ctx.primaryHit = minHit;
+		}
 		// If there are no intersections, return background color
 		if (minHit == null)
 			return this.backgroundColor;
-		
+		return shade(ray, minHit, recursionLevel, weight, ctx);
+	}
+	
+	/**
+	 * Calculates the color seen by the ray at its closest hit, including the secondary rays it spawns.
+	 */
+	private Vec shade(Ray ray, Hit minHit, int recursionLevel, double weight, RenderContext ctx) {
 		Point hitPoint = ray.getHittingPoint(minHit);
-		Surface hitSurface = minHit.getSurface();
+		Material material = compiled.material(minHit);
 		// Ambient calculations
-		Vec color = calcAmbientColor(hitSurface);
+		Vec color = calcAmbientColor(material);
 
-		// Iterate over light sources and calculate diffuse and specular coefficients
-		for (Light light : this.lightSources) {
-			Ray rayToLight = light.rayToLight(hitPoint);
-			if (!this.isOccluded(light, rayToLight)) {
-				Vec intensity = light.intensity(hitPoint, rayToLight);
-				color = color.add((calcDiffuseColor(minHit, rayToLight)).add(calcSpecularColor(minHit, rayToLight, ray.direction())).mult(intensity));
+		// Iterate over the light sources that may reach the hit point and calculate diffuse and specular coefficients
+		if (this.lightTree != null) {
+			for (int lightIndex : this.lightTree.unsampled())
+				addLightColor(color, 1, this.lightTree.light(lightIndex), lightIndex, ray, minHit, hitPoint, material, ctx);
+			// Each sampled light is weighed by the inverse of its probability, so the average is the sum of all the lights
+			for (int sample = 0; sample < this.lightSamples; ++sample) {
+				int lightIndex = this.lightTree.sample(hitPoint, ctx.random(), ctx);
+				if (lightIndex >= 0)
+					addLightColor(color, 1.0 / (this.lightSamples * ctx.lightProbability), this.lightTree.light(lightIndex),
+							lightIndex, ray, minHit, hitPoint, material, ctx);
+			}
+		} else {
+			int[] lightIndices = this.lightGrid.lights(hitPoint);
+			ctx.lightsCulled += this.lightSources.size() - lightIndices.length;
+			for (int lightIndex : lightIndices) {
+				if (!this.lightGrid.reaches(lightIndex, hitPoint)) {
+					++ctx.lightsCulled;
+					continue;
+				}
+				addLightColor(color, 1, this.lightGrid.light(lightIndex), lightIndex, ray, minHit, hitPoint, material, ctx);
 			}
 		}
 				// Reflective and refractive calculations
+				// (rays whose weight is too small to change the pixel are not traced)
 				if (this.renderReflections) {
-					Vec reflectionColor = calcReflection(ray, recursionLevel + 1, minHit);
-					color = color.add(reflectionColor);
+					double reflectionWeight = weight * material.reflectionIntensity;
+					if (!isNegligible(reflectionWeight, recursionLevel + 1, ctx)) {
+						Vec reflectionColor = calcReflection(ray, recursionLevel + 1, minHit, hitPoint, reflectionWeight, ctx);
+						color.addInPlace(material.reflectionIntensity, reflectionColor);
+					}
 				}
 				if (this.renderRefractions) {
-					if (minHit.isOnTransparentSurface()) {
-						Vec refractionColor = calcRefraction(ray, recursionLevel + 1, minHit);
-						color = color.add(refractionColor);
+					double refractionWeight = weight * material.refractionIntensity;
+					if (material.isTransparent && !isNegligible(refractionWeight, recursionLevel + 2, ctx)) {
+						Vec refractionColor = calcRefraction(ray, recursionLevel + 1, minHit, material, hitPoint, refractionWeight, ctx);
+						color.addInPlace(material.refractionIntensity, refractionColor);
 					}
 				}
 		return color;
 	}
+	
+	/**
+	 * Adds the diffuse and specular colors of a light at the hit point to the color, unless the light is occluded.
+	 * The terms are computed in the scratch registers of the context and accumulated in place.
+	 * @param scale - the factor of the light's colors (1 unless the light was sampled)
+	 */
+	private void addLightColor(Vec color, double scale, Light light, int lightIndex, Ray ray, Hit hit, Point hitPoint,
+			Material material, RenderContext ctx) {
+		++ctx.lightsEvaluated;
+		Ray rayToLight = light.rayToLight(hitPoint);
+		if (!this.isOccluded(light, lightIndex, rayToLight, ctx)) {
+			Vec intensity = light.intensity(hitPoint, rayToLight);
+			Vec diffuse = calcDiffuseColor(hit, material, rayToLight, ctx);
+			Vec specular = calcSpecularColor(hit, material, rayToLight, ray.direction(), ctx);
+			color.addInPlace(scale, diffuse.addInPlace(specular).multInPlace(intensity));
+		}
+	}
+	
+	/**
+	 * Checks whether a secondary ray contributes too little to the pixel to be traced.
+	 * @param weight - the weight of the ray
+	 * @param recursionLevel - the level the ray would be traced in
+	 * @return true if the ray should be skipped
+	 */
+	private boolean isNegligible(double weight, int recursionLevel, RenderContext ctx) {
+		if (weight > this.contributionThreshold || recursionLevel >= this.maxRecursionLevel)
+			return false;
+		++ctx.raysTerminated;
+		return true;
+	}
 
-	private Vec calcRefraction(Ray ray, int recursionLevel, Hit hit) {
-		Surface surface = hit.getSurface();
-		Vec direction = Ops.refract(ray.direction(), hit.getNormalToSurface(), surface.n1(hit), surface.n2(hit));
-		Vec intensity = new Vec(surface.refractionIntensity());
-		return (this.calcColor(new Ray(ray.getHittingPoint(hit), direction), recursionLevel + 1)).mult(intensity);
+	/**
+	 * Traces the refracted ray.
+	 * @return the color seen by the refracted ray (not yet weighted by the refraction intensity).
+	 * The returned vector may be shared and must not be changed.
+	 */
+	private Vec calcRefraction(Ray ray, int recursionLevel, Hit hit, Material material, Point hitPoint, double weight,
+			RenderContext ctx) {
+		double n1 = hit.isWithinTheSurface() ? material.refractionIndex : 1;
+		double n2 = hit.isWithinTheSurface() ? 1 : material.refractionIndex;
+		Vec direction = Ops.refract(ray.direction(), hit.getNormalToSurface(), n1, n2);
+		return this.calcColor(new Ray(hitPoint, direction), recursionLevel + 1, RenderContext.REFRACTION, weight, ctx);
 	}
 
-	private Vec calcReflection(Ray ray, int recursionLevel, Hit hit) {
+	/**
+	 * Traces the reflected ray.
+	 * @return the color seen by the reflected ray (not yet weighted by the reflection intensity).
+	 * The returned vector may be shared and must not be changed.
+	 */
+	private Vec calcReflection(Ray ray, int recursionLevel, Hit hit, Point hitPoint, double weight, RenderContext ctx) {
 		Vec direction = Ops.reflect(ray.direction(), hit.getNormalToSurface());
-		Vec intensity = new Vec(hit.getSurface().reflectionIntensity());
-		return (this.calcColor(new Ray(ray.getHittingPoint(hit), direction), recursionLevel)).mult(intensity);
+		return this.calcColor(new Ray(hitPoint, direction), recursionLevel, RenderContext.REFLECTION, weight, ctx);
 	}
 
 	/**
@@ -233,48 +1291,63 @@ public class Scene {
 	 * @param ray - the ray from a pixel
 	 * @return minimum hit/intersection
 	 */
-	private Hit findMinHit(Ray ray) {
+	private Hit findMinHit(Ray ray, RenderContext ctx) {
 		// If there are no hits return null
-		Hit minHit = null;
-		for (Surface surface : this.surfaces){
-			Hit currentHit = surface.intersect(ray);
-			if (minHit == null || (currentHit != null && minHit.compareTo(currentHit) > 0)){
-				minHit = currentHit;
-			}
-		}
-		return minHit;
+		return this.bvh.findMinHit(ray, ctx.tests);
 	}
 	
 	/**
 	 * Checks if the given ray is occluded by any surface 
 	 * before reaching the light source
 	 * @param light -The light source
+	 * @param lightIndex - the position of the light in the scene
 	 * @param ray - the ray to the light source
+	 * @param ctx - the context of the rendering thread
 	 * @return true if the ray is occluded by any surface.
 	 */
-	private boolean isOccluded(Light light, Ray ray) {
-		for (Surface surface : this.surfaces) {
-			if (light.isOccludedBy(surface, ray))
+	private boolean isOccluded(Light light, int lightIndex, Ray ray, RenderContext ctx) {
+		if (!light.illuminates(ray))
+			return true;
+		++ctx.rays[RenderContext.SHADOW];
+		double tMax = light.distanceTo(ray.source());
+		if (!this.occludersCache)
+			return this.bvh.anyHit(ray, tMax, ctx.tests);
+		
+		// The last blocker of this light is tested first, the full search is done only if it doesn't block the ray
+		int lastOccluder = ctx.lastOccluders[lightIndex];
+		if (lastOccluder >= 0) {
+			++ctx.occluderCacheLookups;
+			if (this.bvh.occludes(lastOccluder, ray, tMax, ctx.tests)) {
+				++ctx.occluderCacheHits;
 				return true;
+			}
 		}
-		return false;
+		int occluder = this.bvh.findOccluder(ray, tMax, ctx.tests);
+		if (occluder >= 0)
+			ctx.lastOccluders[lightIndex] = occluder;
+		return occluder >= 0;
 	}
 
-	private Vec calcSpecularColor(Hit hit, Ray rayToLight, Vec V) {
+	//returns the ctx.specular register
+	private Vec calcSpecularColor(Hit hit, Material material, Ray rayToLight, Vec V, RenderContext ctx) {
 		Vec N = hit.getNormalToSurface();
 		Vec L = rayToLight.direction();
-		Vec Lreflected = Ops.reflect(L, N).normalize();
-		double cosTheta = Lreflected.dot(V.normalize().neg());
-		return cosTheta <= 0 ? new Vec() : hit.getSurface().Ks().mult(Math.pow(cosTheta, hit.getSurface().shininess()));
+		Vec Lreflected = ctx.reflected.setReflect(L, N).normalizeInPlace();
+		//V is the direction of a ray, so it is already normalized
+		double cosTheta = -Lreflected.dot(V);
+		if (cosTheta <= 0)
+			return ctx.specular.set(0, 0, 0);
+		return ctx.specular.set(material.Ks).scaleInPlace(Math.pow(cosTheta, material.shininess));
 	}
 
-	private Vec calcDiffuseColor(Hit hit, Ray ray){
+	//returns the ctx.diffuse register
+	private Vec calcDiffuseColor(Hit hit, Material material, Ray ray, RenderContext ctx){
 		Vec N = hit.getNormalToSurface();
 		Vec L = ray.direction();
-		return hit.getSurface().Kd().mult(Math.max(N.dot(L),0));
+		return ctx.diffuse.set(material.Kd).scaleInPlace(Math.max(N.dot(L),0));
 	}
 
-	private Vec calcAmbientColor(Surface surface) {
-		return surface.Ka().mult(this.ambient);
+	private Vec calcAmbientColor(Material material) {
+		return material.Ka.mult(this.ambient);
 	}
 }
@@ -1,5 +1,8 @@
 package edu.cg.scene.camera;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
@@ -35,6 +38,27 @@ public class PinholeCamera {
 		this.Ry = 200;
 		this.Rx = 200;
 	}
+	/**
+	 * Initializes a pin-hole camera with the vectors of another camera (e.g. read from a scene file), which are
+	 * kept as they are rather than normalized again, so the camera is exactly the same as the other one.
+	 * @param cameraPosition - The position of the camera.
+	 * @param towardsVec - The normalized towards vector of the camera.
+	 * @param upVec - The normalized up vector of the camera.
+	 * @param rightVec - The normalized right vector of the camera.
+	 * @param distanceToPlain - The distance of the camera (position) to the center point of the image-plain.
+	 */
+	public PinholeCamera(Point cameraPosition, Vec towardsVec, Vec upVec, Vec rightVec, double distanceToPlain) {
+		this.cameraPosition = cameraPosition;
+		this.towardsVec = towardsVec;
+		this.upVec = upVec;
+		this.rightVec = rightVec;
+		this.distanceToPlain = distanceToPlain;
+		this.center = new Ray(cameraPosition, this.towardsVec).add(this.distanceToPlain);
+		this.viewPlainWidth = 2;
+		this.Ry = 200;
+		this.Rx = 200;
+	}
+	
 	/**
 	 * Initializes the resolution and width of the image.
 	 * @param height - the number of pixels in the y direction.
@@ -55,9 +79,20 @@ public class PinholeCamera {
 	 * @return the middle point of the pixel (x,y) in the model coordinates.
 	 */
 	public Point transform(int x, int y) {
-		double upDistance = (double)(y - (this.Ry / 2)) * (this.viewPlainWidth / this.Ry) * (-1);
-		double rightDistance = -(double)(x - (this.Rx / 2)) * (this.viewPlainWidth / this.Rx);
-		Point refrencePoint = this.center.add(this.upVec.mult(upDistance)).add(this.rightVec.mult(rightDistance));
+		return transform((double)x, (double)y);
+	}
+	
+	/**
+	 * Transforms from (fractional) pixel coordinates to model coordinates.
+	 * Used for sampling several points inside a pixel.
+	 * @param x - the x direction coordinate, where x = i is the point that transform(i, y) returns.
+	 * @param y - the y direction coordinate, where y = j is the point that transform(x, j) returns.
+	 * @return the point on the view plain in the model coordinates.
+	 */
+	public Point transform(double x, double y) {
+		double upDistance = (y - (this.Ry / 2)) * (this.viewPlainWidth / this.Ry) * (-1);
+		double rightDistance = -(x - (this.Rx / 2)) * (this.viewPlainWidth / this.Rx);
+		Point refrencePoint = new Point().setAdd(this.center, upDistance, this.upVec).addInPlace(rightDistance, this.rightVec);
 		return refrencePoint;
 	}
 	
@@ -68,4 +103,95 @@ public class PinholeCamera {
 	public Point getCameraPosition() {
 		return new Point (cameraPosition.x,cameraPosition.y,cameraPosition.z);
 	}
+	
+	/**
+	 * @return the (normalized) towards vector of the camera.
+	 */
+	public Vec getTowardsVec() {
+		return towardsVec;
+	}
+	
+	/**
+	 * @return the (normalized) up vector of the camera.
+	 */
+	public Vec getUpVec() {
+		return upVec;
+	}
+	
+	/**
+	 * @return the (normalized) right vector of the camera.
+	 */
+	public Vec getRightVec() {
+		return rightVec;
+	}
+	
+	public double getDistanceToPlain() {
+		return distanceToPlain;
+	}
+	
+	/**
+	 * Interpolates between two cameras. The positions and distances to the plain are interpolated linearly,
+	 * and the towards and up vectors are rotated at a constant angular speed (spherical interpolation), so
+	 * opposite vectors turn around rather than pass through zero. Opposite towards vectors turn around the
+	 * up vector of the first camera, and opposite up vectors roll around its towards vector. The up vector
+	 * is then made perpendicular to the towards vector again.
+	 * @param t - 0 for the first camera, 1 for the second one
+	 * @return a new camera
+	 */
+	public static PinholeCamera interpolate(PinholeCamera from, PinholeCamera to, double t) {
+		Point position = from.cameraPosition.mult(1 - t).add(to.cameraPosition.mult(t));
+		Vec towards = slerp(from.towardsVec, to.towardsVec, t, from.upVec);
+		Vec up = slerp(from.upVec, to.upVec, t, from.towardsVec);
+		up = up.add(towards.mult(-up.dot(towards)));
+		//the interpolated up vector is parallel to the towards vector: the up vector is rebuilt from the right one
+		if(up.norm() < 1e-9)
+			up = towards.cross(slerp(from.rightVec, to.rightVec, t, from.towardsVec));
+		return new PinholeCamera(position, towards, up, (1 - t) * from.distanceToPlain + t * to.distanceToPlain);
+	}
+	
+	/**
+	 * Rotates the unit vector a towards the unit vector b by the fraction t of the angle between them.
+	 * @param axis - the axis to rotate around if the vectors are opposite, which is perpendicular to a
+	 */
+	private static Vec slerp(Vec a, Vec b, double t, Vec axis) {
+		if(t == 0)
+			return a;
+		if(t == 1)
+			return b;
+		double cos = Math.max(-1, Math.min(1, a.dot(b)));
+		//the unit vector perpendicular to a in the plane of the rotation
+		Vec perpendicular = b.add(a.mult(-cos));
+		if(perpendicular.norm() < 1e-9) {
+			if(cos > 0)
+				return a;
+			perpendicular = axis.cross(a);
+		}
+		perpendicular = perpendicular.normalize();
+		double angle = t * Math.acos(cos);
+		return a.mult(Math.cos(angle)).add(perpendicular.mult(Math.sin(angle)));
+	}
+	
+	/**
+	 * Creates the cameras of the frames of a path through the given keyframes.
+	 * The frames are spread evenly over the path: the first frame is on the first keyframe and the last frame
+	 * is on the last keyframe, and the frames between two keyframes are interpolated (see interpolate).
+	 * @param keyframes - the cameras the path goes through
+	 * @param framesCount - the number of frames
+	 * @return the camera of each frame
+	 */
+	public static List<PinholeCamera> path(List<PinholeCamera> keyframes, int framesCount) {
+		if(keyframes.isEmpty())
+			throw new IllegalArgumentException("A path needs at least one keyframe");
+		if(framesCount < 1)
+			throw new IllegalArgumentException("Frames count must be positive");
+		List<PinholeCamera> frames = new ArrayList<>();
+		int segments = keyframes.size() - 1;
+		for(int i = 0; i < framesCount; ++i) {
+			double s = framesCount == 1 ? 0 : (double)i * segments / (framesCount - 1);
+			int segment = Math.min((int)s, Math.max(segments - 1, 0));
+			frames.add(segments == 0 ? interpolate(keyframes.get(0), keyframes.get(0), 0) :
+				interpolate(keyframes.get(segment), keyframes.get(segment + 1), s - segment));
+		}
+		return frames;
+	}
 }
@@ -13,6 +13,10 @@ public class DirectionalLight extends Light {
 		return this;
 	}
 
+	public Vec direction() {
+		return direction;
+	}
+
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator();
@@ -33,7 +37,12 @@ public class DirectionalLight extends Light {
 	@Override
 	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
 		// If surface intersects with ray return true otherwise false
-		return surface.intersect(rayToLight) != null;
+		return surface.occludes(rayToLight, Double.POSITIVE_INFINITY);
+	}
+	
+	@Override
+	public double distanceTo(Point fromPoint) {
+		return Double.POSITIVE_INFINITY;
 	}
 
 	@Override
@@ -19,6 +19,10 @@ public abstract class Light {
 		return this;
 	}
 	
+	public Vec intensity() {
+		return intensity;
+	}
+	
 	/**
 	 * Constructs a ray originated from the given point to the light.
 	 * @param fromPoint - The initial point of the ray
@@ -35,6 +39,34 @@ public abstract class Light {
 	 */
 	public abstract boolean isOccludedBy(Surface surface, Ray rayToLight);
 	
+	/**
+	 * Returns the distance from the given point to the light source.
+	 * Surfaces which are farther than this distance (along a ray to the light) can't occlude the light.
+	 * @param fromPoint - The given point
+	 * @return the distance to the light, or positive infinity if the light is infinitely far.
+	 */
+	public abstract double distanceTo(Point fromPoint);
+	
+	/**
+	 * Checks if the light can reach the source of the given ray when nothing occludes it
+	 * (e.g. a spotlight doesn't reach points behind it).
+	 * @param rayToLight - the ray to the light source
+	 * @return true if the light may illuminate the source of the ray.
+	 */
+	public boolean illuminates(Ray rayToLight) {
+		return true;
+	}
+	
+	/**
+	 * Returns the distance from the light beyond which its intensity is below the given cutoff in every
+	 * color channel, so points farther than that can be shaded without the light.
+	 * @param cutoff - the intensity below which the light is ignored (0 to never ignore it)
+	 * @return the range of the light, or positive infinity if it reaches every point (e.g. a directional light).
+	 */
+	public double range(double cutoff) {
+		return Double.POSITIVE_INFINITY;
+	}
+	
 	/**
 	 * Returns the light intensity at the specified point.
 	 * @param hittingPoint - The given point
@@ -1,6 +1,5 @@
 package edu.cg.scene.lightSources;
 
-import edu.cg.algebra.Hit;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
@@ -47,15 +46,14 @@ public class PointLight extends Light {
 	 */
 	@Override
 	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-		// If surface does not intersect with ray return false
-		Hit hit = surface.intersect(rayToLight);
-	    if (hit == null) {
-	    	return false;
-	    }
-	    // Otherwise, the surface intersects with the ray, if the intersection is closer to
-	    // object than the light source then return true, otherwise false
-	    Point sourceOfRay = rayToLight.source();
-	    	return sourceOfRay.distSqr(this.position) > sourceOfRay.distSqr(rayToLight.getHittingPoint(hit));
+		// The surface occludes the light only if it intersects with the ray
+		// closer to the object than the light source
+		return surface.occludes(rayToLight, distanceTo(rayToLight.source()));
+	}
+	
+	@Override
+	public double distanceTo(Point fromPoint) {
+		return fromPoint.dist(this.position);
 	}
 
 	/**
@@ -71,6 +69,24 @@ public class PointLight extends Light {
         return this.intensity.mult(1.0 / (this.kc + (this.kl * distance) + (this.kq * distance * distance)));
     }
 
+	/**
+	 * The intensity decays by kc + kl * d + kq * d^2 at distance d, so the range is the distance
+	 * where this decay reaches the ratio between the strongest channel of the intensity and the cutoff.
+	 */
+	@Override
+	public double range(double cutoff) {
+		if(cutoff <= 0)
+			return Double.POSITIVE_INFINITY;
+		double decay = Math.max(intensity.x, Math.max(intensity.y, intensity.z)) / cutoff;
+		if(kc >= decay)
+			return 0;
+		if(kq > 0)
+			return (-kl + Math.sqrt(kl * kl + 4 * kq * (decay - kc))) / (2 * kq);
+		if(kl > 0)
+			return (decay - kc) / kl;
+		return Double.POSITIVE_INFINITY;
+	}
+
 	public PointLight initPosition(Point position) {
 		this.position = position;
 		return this;
@@ -82,4 +98,15 @@ public class PointLight extends Light {
 		this.kc = kc;
 		return this;
 	}
+	
+	public Point position() {
+		return position;
+	}
+	
+	/**
+	 * @return the decay factors {kq, kl, kc}
+	 */
+	public double[] decayFactors() {
+		return new double[] {kq, kl, kc};
+	}
 }
@@ -13,6 +13,10 @@ public class Spotlight extends PointLight {
 		return this;
 	}
 	
+	public Vec direction() {
+		return direction;
+	}
+	
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator();
@@ -45,11 +49,21 @@ public class Spotlight extends PointLight {
 	 */
     @Override
     public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-        if (rayToLight.direction().neg().dot(this.direction.normalize()) < 1.0E-5) {
+        if (!illuminates(rayToLight)) {
             return true;
         }
         return super.isOccludedBy(surface, rayToLight);
     }
+    
+    /**
+     * A spotlight only reaches points in front of it.
+     * @param rayToLight - the ray to the light source
+     * @return true if the source of the ray is in front of the spotlight.
+     */
+    @Override
+    public boolean illuminates(Ray rayToLight) {
+        return -rayToLight.direction().dot(this.direction.normalize()) >= 1.0E-5;
+    }
    
     /**
 	 * Returns the light intensity at the specified point.
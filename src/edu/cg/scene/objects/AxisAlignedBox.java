@@ -1,8 +1,11 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.Bounds;
 import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
 import edu.cg.algebra.Vec;
 
 public class AxisAlignedBox extends Shape {
@@ -10,6 +13,12 @@ public class AxisAlignedBox extends Shape {
 	private Point maxPoint;
 	private String name = "";
 	static private int CURR_IDX;
+	
+	private static final int[] AXES_ORDER = {1, 2, 0};
+	// unit normals of the faces (positive x, y, z then negative x, y, z), shared by all hits
+	private static final Vec[] FACE_NORMALS = {
+			new Vec(1, 0, 0), new Vec(0, 1, 0), new Vec(0, 0, 1),
+			new Vec(-1, 0, 0), new Vec(0, -1, 0), new Vec(0, 0, -1)};
 
 	/**
 	 * Creates an axis aligned box with a specified minPoint and maxPoint.
@@ -59,42 +68,163 @@ public class AxisAlignedBox extends Shape {
 		fixBoundryPoints();
 		return this;
 	}
+	
+	public Point minPoint() {
+		return minPoint;
+	}
+	
+	public Point maxPoint() {
+		return maxPoint;
+	}
+	
 	public boolean isInBox(Point p){
-		return isSmallerThen(minPoint, p) && isSmallerThen(p, maxPoint);
+		return isInBox(p.x, p.y, p.z);
 	}
-	private boolean isSmallerThen(Point p1, Point p2){
-		return p1.x <= p2.x && p1.y <= p2.y && p1.z <= p2.z;
+	
+	private boolean isInBox(double x, double y, double z) {
+		return minPoint.x <= x && minPoint.y <= y && minPoint.z <= z &&
+				x <= maxPoint.x && y <= maxPoint.y && z <= maxPoint.z;
 	}
 
 	@Override
 	public Hit intersect(Ray ray) {
 		// See documentation in Intersectable.java base class.
-		Plain[] plains = createPlains();
-		Hit minHit = null;
-		Hit currentHit;
-		for (Plain plain : plains) {
-			if ((currentHit = plain.intersect(ray)) != null && isInBox(ray.getHittingPoint(currentHit))) {
-				if (minHit != null) {
-					if (minHit.compareTo(currentHit) > 0)
-						minHit = currentHit;
-				} else {
-					minHit = currentHit;
-				}
+		// Slab test: the ray is inside the box between the largest entry distance and the smallest
+		// exit distance over the three axes. The axes are checked in the order y, z, x so that hits
+		// on an edge get the same face normal as the plain based implementation.
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		Vec inverse = ray.inverseDirection();
+		double tNear = Double.NEGATIVE_INFINITY, tFar = Double.POSITIVE_INFINITY;
+		int nearAxis = -1, farAxis = -1;
+		for (int i = 0; i < 3; i++) {
+			int axis = AXES_ORDER[i];
+			double o, d, inv, min, max;
+			switch (axis) {
+			case 0:
+				o = source.x; d = direction.x; inv = inverse.x; min = minPoint.x; max = maxPoint.x;
+				break;
+			case 1:
+				o = source.y; d = direction.y; inv = inverse.y; min = minPoint.y; max = maxPoint.y;
+				break;
+			default:
+				o = source.z; d = direction.z; inv = inverse.z; min = minPoint.z; max = maxPoint.z;
+				break;
+			}
+			if (d == 0) {
+				// parallel to the slab: either always inside it or never
+				if (o < min || o > max)
+					return null;
+				continue;
+			}
+			double t1 = (min - o) * inv, t2 = (max - o) * inv;
+			if (t1 > t2) {
+				double tmp = t1;
+				t1 = t2;
+				t2 = tmp;
+			}
+			if (t1 > tNear) {
+				tNear = t1;
+				nearAxis = axis;
+			}
+			if (t2 < tFar) {
+				tFar = t2;
+				farAxis = axis;
 			}
 		}
-		return minHit;
+		if (tNear > tFar)
+			return null;
+		
+		// The ray enters the box in front of its source: the hit is on the entry face.
+		// Otherwise the source is inside the box and the hit is on the exit face.
+		if (tNear > Ops.epsilon && tNear < Ops.infinity)
+			return new Hit(tNear, faceNormal(nearAxis, direction)).setOutside();
+		if (tFar > Ops.epsilon && tFar < Ops.infinity)
+			return new Hit(tFar, faceNormal(farAxis, direction)).setWithin();
+		return null;
+	}
+	
+	@Override
+	public boolean occludes(Ray ray, double tMax) {
+		// The same slab test as intersect, without tracking the faces
+		Point source = ray.source();
+		Vec inverse = ray.inverseDirection();
+		double tNear = Double.NEGATIVE_INFINITY, tFar = Double.POSITIVE_INFINITY;
+		for (int axis = 0; axis < 3; axis++) {
+			double o, inv, min, max;
+			switch (axis) {
+			case 0:
+				o = source.x; inv = inverse.x; min = minPoint.x; max = maxPoint.x;
+				break;
+			case 1:
+				o = source.y; inv = inverse.y; min = minPoint.y; max = maxPoint.y;
+				break;
+			default:
+				o = source.z; inv = inverse.z; min = minPoint.z; max = maxPoint.z;
+				break;
+			}
+			if (Double.isInfinite(inv)) {
+				if (o < min || o > max)
+					return false;
+				continue;
+			}
+			double t1 = (min - o) * inv, t2 = (max - o) * inv;
+			tNear = Math.max(tNear, Math.min(t1, t2));
+			tFar = Math.min(tFar, Math.max(t1, t2));
+			if (tNear > tFar)
+				return false;
 		}
-
-	private Plain[] createPlains() {
-		Vec[] normals = new Vec[3];
-		normals[0] = new Vec(0, 1, 0);
-		normals[1] = new Vec(0, 0, 1);
-		normals[2] = new Vec(1, 0, 0);
-		Plain[] plains = new Plain[6];
-		for (int i = 0; i < 3; i++) {
-			plains[i] = new Plain(normals[i], minPoint);
-			plains[i+3] = new Plain(normals[i], maxPoint);
+		double t = tNear > Ops.epsilon ? tNear : tFar;
+		return t > Ops.epsilon & t < Ops.infinity & t < tMax;
+	}
+	
+	@Override
+	public void intersect(RayPacket packet, int id) {
+		// The same slab test as intersect, where the distances of the slabs from the shared source are computed once
+		double minX = minPoint.x - packet.ox, maxX = maxPoint.x - packet.ox;
+		double minY = minPoint.y - packet.oy, maxY = maxPoint.y - packet.oy;
+		double minZ = minPoint.z - packet.oz, maxZ = maxPoint.z - packet.oz;
+		boolean inX = minX <= 0 & maxX >= 0, inY = minY <= 0 & maxY >= 0, inZ = minZ <= 0 & maxZ >= 0;
+		for (int i = 0; i < packet.size; i++) {
+			double tNear = Double.NEGATIVE_INFINITY, tFar = Double.POSITIVE_INFINITY;
+			if (packet.dx[i] != 0) {
+				double t1 = minX * packet.ix[i], t2 = maxX * packet.ix[i];
+				tNear = Math.min(t1, t2);
+				tFar = Math.max(t1, t2);
+			} else if (!inX) {
+				continue;
+			}
+			if (packet.dy[i] != 0) {
+				double t1 = minY * packet.iy[i], t2 = maxY * packet.iy[i];
+				tNear = Math.max(tNear, Math.min(t1, t2));
+				tFar = Math.min(tFar, Math.max(t1, t2));
+			} else if (!inY) {
+				continue;
+			}
+			if (packet.dz[i] != 0) {
+				double t1 = minZ * packet.iz[i], t2 = maxZ * packet.iz[i];
+				tNear = Math.max(tNear, Math.min(t1, t2));
+				tFar = Math.min(tFar, Math.max(t1, t2));
+			} else if (!inZ) {
+				continue;
+			}
+			if (tNear > tFar)
+				continue;
+			if (tNear > Ops.epsilon && tNear < Ops.infinity)
+				packet.record(i, tNear, id);
+			else if (tFar > Ops.epsilon && tFar < Ops.infinity)
+				packet.record(i, tFar, id);
 		}
-		return plains;
+	}
+	
+	// the normal of the face on the given axis, oriented against the ray (like Plain.normal(Ray))
+	private static Vec faceNormal(int axis, Vec direction) {
+		double d = axis == 0 ? direction.x : (axis == 1 ? direction.y : direction.z);
+		return d < 0 ? FACE_NORMALS[axis] : FACE_NORMALS[axis + 3];
+	}
+	
+	@Override
+	public Bounds bounds() {
+		return new Bounds(minPoint, maxPoint);
 	}
 }
@@ -0,0 +1,182 @@
+package edu.cg.scene.objects;
+
+import java.util.List;
+
+import edu.cg.algebra.Bounds;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+
+/**
+ * A shape which places a shared group of surfaces (see Scene.addGroup) in the scene through a transform:
+ * a uniform scale, then a rotation and then a translation. The surfaces of the group are kept once,
+ * and each instance only keeps its transform, so a group can be repeated many times cheaply.
+ * The hits of an instance are on the surfaces of the group, so they get the materials of these surfaces.
+ * Renders don't intersect the group one surface after the other like intersect and occludes do: CompiledScene
+ * builds a single hierarchy over each group, which all its instances traverse with the ray in group coordinates.
+ */
+public class Instance extends Shape {
+	private String group;
+	private Vec translation = new Vec();
+	private double scale = 1;
+	private Vec rotation = new Vec(); //the rotation angles (in degrees) around the x, y and z axes, applied in this order
+
+	//set by bind, before rendering
+	private transient List<Surface> surfaces = null;
+	private transient double[] matrix = null; //the rotation matrix, row by row
+	private transient Bounds groupBounds = null;
+
+	public Instance(String group) {
+		this.group = group;
+	}
+
+	public Instance() {
+		this("");
+	}
+
+	@Override
+	public String toString() {
+		String endl = System.lineSeparator();
+		return "Instance of " + group + endl + "Translation: " + translation + endl + "Scale: " + scale + endl +
+				"Rotation: " + rotation + endl;
+	}
+
+	public Instance initTranslation(Vec translation) {
+		this.translation = translation;
+		return this;
+	}
+
+	public Instance initScale(double scale) {
+		if (scale <= 0)
+			throw new IllegalArgumentException("Scale must be positive");
+		this.scale = scale;
+		return this;
+	}
+
+	public Instance initRotation(Vec rotation) {
+		this.rotation = rotation;
+		return this;
+	}
+
+	public String group() {
+		return group;
+	}
+
+	public double scale() {
+		return scale;
+	}
+
+	/**
+	 * @return the surfaces of the group, or null if the instance hasn't been bound yet.
+	 */
+	public List<Surface> surfaces() {
+		return surfaces;
+	}
+
+	/**
+	 * Binds the instance to the surfaces of its group. Must be called before the instance is intersected.
+	 * @param surfaces - the surfaces of the group (which may be shared with other instances)
+	 */
+	public Instance bind(List<Surface> surfaces) {
+		this.surfaces = surfaces;
+
+		double cx = Math.cos(Math.toRadians(rotation.x)), sx = Math.sin(Math.toRadians(rotation.x));
+		double cy = Math.cos(Math.toRadians(rotation.y)), sy = Math.sin(Math.toRadians(rotation.y));
+		double cz = Math.cos(Math.toRadians(rotation.z)), sz = Math.sin(Math.toRadians(rotation.z));
+		// Rz * Ry * Rx
+		matrix = new double[] {
+				cz*cy, cz*sy*sx - sz*cx, cz*sy*cx + sz*sx,
+				sz*cy, sz*sy*sx + cz*cx, sz*sy*cx - cz*sx,
+				-sy,   cy*sx,            cy*cx};
+
+		groupBounds = new Bounds();
+		for (Surface surface : surfaces) {
+			Bounds bounds = surface.bounds();
+			if (bounds == null) {
+				groupBounds = null;
+				break;
+			}
+			groupBounds.include(bounds);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the ray in the coordinates of the group: the inverse transform of the source and the inverse
+	 * rotation of the direction. Distances along it are 1 / scale of the distances along the given ray.
+	 */
+	public Ray toGroup(Ray ray) {
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		double[] m = matrix;
+		double x = source.x - translation.x, y = source.y - translation.y, z = source.z - translation.z;
+		Point localSource = new Point(
+				(m[0]*x + m[3]*y + m[6]*z) / scale,
+				(m[1]*x + m[4]*y + m[7]*z) / scale,
+				(m[2]*x + m[5]*y + m[8]*z) / scale);
+		Vec localDirection = new Vec(
+				m[0]*direction.x + m[3]*direction.y + m[6]*direction.z,
+				m[1]*direction.x + m[4]*direction.y + m[7]*direction.z,
+				m[2]*direction.x + m[5]*direction.y + m[8]*direction.z);
+		return new Ray(localSource, localDirection);
+	}
+
+	@Override
+	public Hit intersect(Ray ray) {
+		Ray localRay = toGroup(ray);
+		Hit minHit = null;
+		for (Surface surface : surfaces) {
+			Hit hit = surface.intersect(localRay);
+			if (hit != null && (minHit == null || hit.t() < minHit.t()))
+				minHit = hit;
+		}
+		return minHit == null ? null : toScene(minHit);
+	}
+
+	/**
+	 * @param groupHit - a hit of a ray given in the coordinates of the group (see toGroup)
+	 * @return the same hit along the ray in the coordinates of the scene, on the same surface of the group.
+	 */
+	public Hit toScene(Hit groupHit) {
+		// A uniform scale doesn't change the directions of the normals, so they are only rotated
+		Vec n = groupHit.getNormalToSurface();
+		double[] m = matrix;
+		Vec normal = new Vec(
+				m[0]*n.x + m[1]*n.y + m[2]*n.z,
+				m[3]*n.x + m[4]*n.y + m[5]*n.z,
+				m[6]*n.x + m[7]*n.y + m[8]*n.z);
+		Hit hit = new Hit(groupHit.t() * scale, normal).setIsWithin(groupHit.isWithinTheSurface());
+		hit.setSurface(groupHit.getSurface());
+		return hit;
+	}
+
+	@Override
+	public boolean occludes(Ray ray, double tMax) {
+		Ray localRay = toGroup(ray);
+		double localTMax = tMax / scale;
+		for (Surface surface : surfaces)
+			if (surface.occludes(localRay, localTMax))
+				return true;
+		return false;
+	}
+
+	@Override
+	public Bounds bounds() {
+		if (groupBounds == null || groupBounds.isEmpty())
+			return null;
+		// the bounds of the transformed corners of the group bounds
+		Bounds bounds = new Bounds();
+		double[] m = matrix;
+		for (int corner = 0; corner < 8; corner++) {
+			double x = scale * ((corner & 1) == 0 ? groupBounds.minX : groupBounds.maxX);
+			double y = scale * ((corner & 2) == 0 ? groupBounds.minY : groupBounds.maxY);
+			double z = scale * ((corner & 4) == 0 ? groupBounds.minZ : groupBounds.maxZ);
+			bounds.include(
+					m[0]*x + m[1]*y + m[2]*z + translation.x,
+					m[3]*x + m[4]*y + m[5]*z + translation.y,
+					m[6]*x + m[7]*y + m[8]*z + translation.z);
+		}
+		return bounds;
+	}
+}
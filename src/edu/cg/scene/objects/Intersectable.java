@@ -2,6 +2,7 @@ package edu.cg.scene.objects;
 
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
 
 public interface Intersectable {
 	/**
@@ -15,4 +16,34 @@ public interface Intersectable {
 	 * @return The hit point of the ray with the object if exist and null otherwise. 
 	 */
 	public Hit intersect(Ray ray);
+	
+	/**
+	 * Checks if the ray hits the object before the given distance.
+	 * Unlike intersect, the closest hit (and its normal) doesn't have to be found,
+	 * so implementations should return as soon as any hit in range is found.
+	 * 
+	 * @param ray the specified ray
+	 * @param tMax the distance (along the ray) beyond which hits are ignored
+	 * @return true if the ray hits the object at a distance smaller than tMax.
+	 */
+	public default boolean occludes(Ray ray, double tMax) {
+		Hit hit = intersect(ray);
+		return hit != null && hit.t() < tMax;
+	}
+	
+	/**
+	 * Intersects all the rays of the packet with the object, and records the hits
+	 * which are closer than the ones already found in the packet.
+	 * The default implementation intersects the rays one by one.
+	 * 
+	 * @param packet the specified rays
+	 * @param id the id the hits of this object are recorded with
+	 */
+	public default void intersect(RayPacket packet, int id) {
+		for (int i = 0; i < packet.size; i++) {
+			Hit hit = intersect(packet.ray(i));
+			if (hit != null)
+				packet.record(i, hit.t(), id);
+		}
+	}
 }
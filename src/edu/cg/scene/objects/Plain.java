@@ -4,13 +4,16 @@ import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ops;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
 import edu.cg.algebra.Vec;
 
 public class Plain extends Shape {
 	//implicit form of a plain: ax + by + cz + d = 0;
 	private double a, b, c, d;
 	
-	private transient Vec normal = null;
+	//lazily computed (and shared by the hits of this plain, which must not change them)
+	private transient volatile Vec normal = null;
+	private transient volatile Vec negNormal = null;
 	
 	public Plain(double a, double b, double c, double d) {
 		this.a = a;
@@ -33,27 +36,59 @@ public class Plain extends Shape {
 		return "Plain: a = " + a + ", b = " + b + ", c = " + c + ", d = " + d + endl;
 	}
 	
-	public synchronized Vec normal() {
-		if(normal == null)
-			normal = new Vec(a, b, c).normalize();
-		return normal;
+	/**
+	 * @return the coefficients of the implicit form {a, b, c, d}
+	 */
+	public double[] coefficients() {
+		return new double[] {a, b, c, d};
 	}
 	
+	public Vec normal() {
+		//racing threads compute the same value, so no locking is needed
+		Vec n = normal;
+		if(n == null)
+			normal = n = new Vec(a, b, c).normalizeInPlace();
+		return n;
+	}
+	
+	private Vec negNormal() {
+		Vec n = negNormal;
+		if(n == null)
+			negNormal = n = normal().neg();
+		return n;
+	}
 	
 	public Vec normal(Ray ray) {
-		return ray.direction().dot(normal()) < 0 ? normal() : normal().neg();
+		return ray.direction().dot(normal()) < 0 ? normal() : negNormal();
 	}
 	
 	public double substitute(Point p) {
-		Vec abc = new Vec(a, b, c);
-		return abc.dot(p.toVec()) + d;
+		return a*p.x + b*p.y + c*p.z + d;
 	}
 	
 	@Override
 	public Hit intersect(Ray ray) {
-		Vec abc = new Vec(a, b, c);
-		
-		double t = -substitute(ray.source()) / ray.direction().dot(abc);
+		Vec direction = ray.direction();
+		double t = -substitute(ray.source()) / (direction.x*a + direction.y*b + direction.z*c);
 		return t > Ops.epsilon & t < Ops.infinity ? new Hit(t, normal(ray)) : null;
 	}
+	
+	@Override
+	public boolean occludes(Ray ray, double tMax) {
+		Vec direction = ray.direction();
+		double t = -substitute(ray.source()) / (direction.x*a + direction.y*b + direction.z*c);
+		return t > Ops.epsilon & t < Ops.infinity & t < tMax;
+	}
+	
+	@Override
+	public void intersect(RayPacket packet, int id) {
+		// the substitution of the shared source is computed once for the whole packet
+		double numerator = -(a*packet.ox + b*packet.oy + c*packet.oz + d);
+		double[] dx = packet.dx, dy = packet.dy, dz = packet.dz;
+		for (int i = 0; i < packet.size; i++) {
+			double t = numerator / (dx[i]*a + dy[i]*b + dz[i]*c);
+			if (t > Ops.epsilon & t < Ops.infinity)
+				packet.record(i, t, id);
+		}
+	}
 }
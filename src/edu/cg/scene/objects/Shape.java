@@ -1,7 +1,17 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.Bounds;
 
 public abstract class Shape implements Intersectable {
 	// An abstract class the represents a shape.
 	// You can add abstract methods here.
+	
+	/**
+	 * Returns the axis aligned bounds of the shape.
+	 * Unbounded shapes (e.g. plains) return null.
+	 * @return a new bounds object containing the shape, or null if the shape is unbounded.
+	 */
+	public Bounds bounds() {
+		return null;
+	}
 }
@@ -30,22 +30,71 @@ public class Sphere extends Shape {
 		this.radius = radius;
 		return this;
 	}
+	
+	public Point center() {
+		return center;
+	}
+	
+	public double radius() {
+		return radius;
+	}
 
 	@Override
 	public Hit intersect(Ray ray) {
-		double b = ray.direction().dot(ray.source().sub(this.center));
-		double discriminant = Math.sqrt(Math.pow(b, 2) - (ray.source().distSqr(this.center) - (radius * radius)));
+		// Computed on the coordinates directly, so only the returned hit (and its normal) is allocated
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		double ox = source.x - center.x, oy = source.y - center.y, oz = source.z - center.z;
+		double b = direction.x*ox + direction.y*oy + direction.z*oz;
+		double discriminant = Math.sqrt(b*b - ((ox*ox + oy*oy + oz*oz) - (radius * radius)));
 		double minT;
-		Vec normal;
+		boolean isOutside;
 		if (Double.isNaN(discriminant) || (-b + discriminant) < Ops.epsilon) {
 			return null;
 		} else if (-b - discriminant > 0) {
 			minT = -b - discriminant;
-			normal = ray.add(minT).sub(this.center).normalize().neg();
+			isOutside = true;
 		} else {
 			minT = -b + discriminant;
-			normal = ray.add(minT).sub(this.center).normalize();
+			isOutside = false;
 		}
+		Vec normal = new Vec(ox + minT*direction.x, oy + minT*direction.y, oz + minT*direction.z).normalizeInPlace();
+		if (isOutside)
+			normal.negInPlace();
 		return new Hit(minT, normal);
 	}
+	
+	@Override
+	public boolean occludes(Ray ray, double tMax) {
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		double ox = source.x - center.x, oy = source.y - center.y, oz = source.z - center.z;
+		double b = direction.x*ox + direction.y*oy + direction.z*oz;
+		double discriminant = Math.sqrt(b*b - ((ox*ox + oy*oy + oz*oz) - (radius * radius)));
+		if (Double.isNaN(discriminant) || (-b + discriminant) < Ops.epsilon)
+			return false;
+		double t = -b - discriminant > 0 ? -b - discriminant : -b + discriminant;
+		return t < tMax;
+	}
+	
+	@Override
+	public void intersect(RayPacket packet, int id) {
+		// The same computation as intersect, where the terms which only depend on the source are shared
+		double ox = packet.ox - center.x, oy = packet.oy - center.y, oz = packet.oz - center.z;
+		double c = (ox*ox + oy*oy + oz*oz) - (radius * radius);
+		double[] dx = packet.dx, dy = packet.dy, dz = packet.dz;
+		for (int i = 0; i < packet.size; i++) {
+			double b = dx[i]*ox + dy[i]*oy + dz[i]*oz;
+			double discriminant = Math.sqrt(b*b - c);
+			if (Double.isNaN(discriminant) || (-b + discriminant) < Ops.epsilon)
+				continue;
+			packet.record(i, -b - discriminant > 0 ? -b - discriminant : -b + discriminant, id);
+		}
+	}
+	
+	@Override
+	public Bounds bounds() {
+		return new Bounds(center.x - radius, center.y - radius, center.z - radius,
+				center.x + radius, center.y + radius, center.z + radius);
+	}
 }
@@ -1,7 +1,9 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.Bounds;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
 import edu.cg.algebra.Vec;
 
 public class Surface implements Intersectable {
@@ -28,12 +30,38 @@ public class Surface implements Intersectable {
 	@Override
 	public Hit intersect(Ray ray) {
 		Hit hit = this.shape.intersect(ray);
-		if (hit != null){
+		//hits of instances are already on the surfaces of their group
+		if (hit != null && hit.getSurface() == null){
 			hit.setSurface(this);
 		}
 		return hit;
 	}
 	
+	@Override
+	public boolean occludes(Ray ray, double tMax) {
+		return this.shape.occludes(ray, tMax);
+	}
+	
+	@Override
+	public void intersect(RayPacket packet, int id) {
+		this.shape.intersect(packet, id);
+	}
+	
+	public Shape shape() {
+		return shape;
+	}
+	
+	public Material material() {
+		return material;
+	}
+	
+	/**
+	 * @return the bounds of the underlying shape, or null if the shape is unbounded.
+	 */
+	public Bounds bounds() {
+		return shape.bounds();
+	}
+	
 	public Vec Ka() {
 		return material.Ka;
 	}
@@ -0,0 +1,99 @@
+package edu.cg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cg.scene.Scene;
+
+/**
+ * Renders with worker processes and compares the image with a render in this process, also when some of
+ * the workers die or hang.
+ */
+class RenderCoordinatorTest {
+	private static final int WIDTH = 60;
+	private static final int HEIGHT = 40;
+
+	//a worker which takes the scene and a tile, and dies without replying
+	static class DyingWorker {
+		public static void main(String[] args) throws Exception {
+			Thread.sleep(1000);
+			System.exit(1);
+		}
+	}
+
+	//a worker which takes the scene and a tile, and never replies
+	static class HangingWorker {
+		public static void main(String[] args) throws Exception {
+			Thread.sleep(Long.MAX_VALUE);
+		}
+	}
+
+	//a coordinator whose first workers run the given class instead of RenderWorker
+	private static class FailingCoordinator extends RenderCoordinator {
+		private final Class<?> failingWorker;
+		private final int failingCount;
+		private final AtomicInteger started = new AtomicInteger();
+
+		FailingCoordinator(int workersCount, Class<?> failingWorker, int failingCount) {
+			super(workersCount);
+			this.failingWorker = failingWorker;
+			this.failingCount = failingCount;
+		}
+
+		@Override
+		Process startWorker() throws IOException {
+			return started.getAndIncrement() < failingCount ? startJava(failingWorker.getName()) : super.startWorker();
+		}
+	}
+
+	//a scene with options the workers must be given, since they change the image
+	private static Scene scene() {
+		return Scenes.scene1().initAntiAliasingFactor(2).initAdaptiveThreshold(0.4).initTileSize(8);
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage image) {
+		for(int y = 0; y < HEIGHT; ++y)
+			for(int x = 0; x < WIDTH; ++x)
+				assertEquals(expected.getRGB(x, y), image.getRGB(x, y), "pixel " + x + ", " + y);
+	}
+
+	private static void assertRendersTheScene(RenderCoordinator coordinator, List<String> log) throws Exception {
+		BufferedImage expected = scene().render(WIDTH, HEIGHT, 4, message -> {});
+		BufferedImage image = coordinator.initTileSize(16).render(scene(), WIDTH, HEIGHT, 4, log::add);
+		assertSameImage(expected, image);
+	}
+
+	@Test
+	void workersRenderTheSameImage() throws Exception {
+		assertRendersTheScene(new RenderCoordinator(2), new CopyOnWriteArrayList<>());
+	}
+
+	@Test
+	void tilesOfDeadWorkersAreRequeued() throws Exception {
+		List<String> log = new CopyOnWriteArrayList<>();
+		assertRendersTheScene(new FailingCoordinator(2, DyingWorker.class, 1), log);
+		assertTrue(log.stream().anyMatch(message -> message.contains("re-queued tile")), log.toString());
+	}
+
+	@Test
+	void tilesOfHungWorkersAreRequeued() throws Exception {
+		List<String> log = new CopyOnWriteArrayList<>();
+		assertRendersTheScene(new FailingCoordinator(2, HangingWorker.class, 1).initTileTimeout(3000), log);
+		assertTrue(log.stream().anyMatch(message -> message.contains("re-queued tile")), log.toString());
+	}
+
+	@Test
+	void renderFailsWhenAllTheWorkersFail() {
+		RenderCoordinator coordinator = new FailingCoordinator(2, DyingWorker.class, 2);
+		assertThrows(IOException.class, () -> coordinator.render(scene(), WIDTH, HEIGHT, 4, message -> {}));
+	}
+}
@@ -0,0 +1,135 @@
+package edu.cg.menu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.Gson;
+
+import edu.cg.Logger;
+import edu.cg.Scenes;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.ExecutorStrategy;
+import edu.cg.scene.Scene;
+
+/**
+ * Checks the keys of the render cache and the eviction of its least recently used images.
+ */
+class RenderCacheTest {
+	private static final Logger LOGGER = message -> {};
+
+	@TempDir
+	File directory;
+
+	//a copy of the scene through its JSON description, like a scene loaded from a file
+	private static Scene copy(Scene scene) {
+		Gson gson = GsonMaker.getInstance();
+		return gson.fromJson(gson.toJson(scene), Scene.class);
+	}
+
+	private static String key(Scene scene) {
+		return RenderCache.key(scene, 80, 60, 4);
+	}
+
+	@Test
+	void copiesOfASceneHaveTheSameKey() {
+		Scene scene = Scenes.scene2();
+		assertEquals(key(scene), key(copy(scene)));
+		assertEquals(key(copy(scene)), key(copy(scene)));
+	}
+
+	@Test
+	void optionsThatOnlyChangeTheSpeedAreNotPartOfTheKey() throws Exception {
+		Scene scene = Scenes.scene2();
+		String key = key(scene);
+		scene.initTileSize(8).initThreadsCount(3).initPacketSize(4).initOccludersCache(false)
+				.initExecutorStrategy(ExecutorStrategy.FIXED_POOL).initProgressive(true);
+		assertEquals(key, key(scene));
+		//the resolution the camera is left with by a render isn't part of the key either
+		scene.render(40, 30, 2, LOGGER);
+		assertEquals(key, key(scene));
+	}
+
+	@Test
+	void everythingThatChangesTheImageIsPartOfTheKey() {
+		List<UnaryOperator<Scene>> changes = new ArrayList<>();
+		changes.add(scene -> scene.initAntiAliasingFactor(3));
+		changes.add(scene -> scene.initMaxRecursionLevel(2));
+		changes.add(scene -> scene.initRenderReflections(false));
+		changes.add(scene -> scene.initAmbient(new Vec(0.3)));
+		changes.add(scene -> scene.initBackgroundColor(new Vec(0.5)));
+		changes.add(scene -> scene.initAdaptiveThreshold(0.3));
+		changes.add(scene -> scene.initContributionThreshold(0.01));
+		changes.add(scene -> scene.initLightCutoff(0.01));
+		changes.add(scene -> scene.initLightSamples(1));
+		changes.add(scene -> scene.initCamera(new Point(0, 0, 6), new Vec(0, 0.1, -1), new Vec(0, 1, 0.1), 2));
+		Set<String> keys = new HashSet<>();
+		Scene scene = Scenes.scene2();
+		keys.add(key(scene));
+		keys.add(RenderCache.key(scene, 81, 60, 4));
+		keys.add(RenderCache.key(scene, 80, 61, 4));
+		keys.add(RenderCache.key(scene, 80, 60, 4.5));
+		for(UnaryOperator<Scene> change : changes)
+			keys.add(key(change.apply(copy(scene))));
+		assertEquals(4 + changes.size(), keys.size());
+	}
+
+	private static BufferedImage image(int rgb) {
+		BufferedImage img = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < 16; ++y)
+			for(int x = 0; x < 16; ++x)
+				img.setRGB(x, y, rgb);
+		return img;
+	}
+
+	//a key in the form of the keys of renders
+	private static String key(char c) {
+		return String.valueOf(c).repeat(64);
+	}
+
+	@Test
+	void getReturnsTheStoredImage() {
+		RenderCache cache = new RenderCache(directory, 1024 * 1024);
+		assertNull(cache.get(key('a'), LOGGER));
+		cache.put(key('a'), image(0x123456), LOGGER);
+		BufferedImage img = cache.get(key('a'), LOGGER);
+		assertNotNull(img);
+		assertEquals(0x123456, img.getRGB(5, 7) & 0xFFFFFF);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	void leastRecentlyUsedImagesAreEvicted() {
+		//the images have the same content, so their files have the same size
+		RenderCache sizing = new RenderCache(new File(directory, "sizing"), 1024 * 1024);
+		sizing.put(key('a'), image(0), LOGGER);
+		long imageBytes = new File(directory, "sizing/" + key('a') + ".png").length();
+
+		RenderCache cache = new RenderCache(directory, 3 * imageBytes);
+		long time = System.currentTimeMillis() - 100000;
+		for(char c : new char[] {'a', 'b', 'c'}) {
+			cache.put(key(c), image(0), LOGGER);
+			assertTrue(new File(directory, key(c) + ".png").setLastModified(time += 1000));
+		}
+		//reading a makes b the least recently used image
+		assertNotNull(cache.get(key('a'), LOGGER));
+		cache.put(key('d'), image(0), LOGGER);
+		for(char c : new char[] {'a', 'c', 'd'})
+			assertTrue(new File(directory, key(c) + ".png").isFile(), key(c));
+		assertNull(cache.get(key('b'), LOGGER));
+	}
+}
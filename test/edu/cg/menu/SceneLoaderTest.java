@@ -0,0 +1,109 @@
+package edu.cg.menu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import edu.cg.Scenes;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.Scene;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Instance;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Compares the scenes streamed by SceneLoader with the ones Gson reads through GsonMaker from the same files.
+ */
+class SceneLoaderTest {
+	private final Gson gson = GsonMaker.getInstance();
+
+	@TempDir
+	Path directory;
+
+	private Path write(JsonElement json) throws IOException {
+		Path path = directory.resolve("scene.json");
+		Files.write(path, gson.toJson(json).getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	private JsonElement gsonMakerLoad(Path path) throws IOException {
+		try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return gson.toJsonTree(gson.fromJson(reader, Scene.class));
+		}
+	}
+
+	private JsonElement sceneLoaderLoad(Path path) throws IOException {
+		return gson.toJsonTree(new SceneLoader().load(path.toString(), message -> {}));
+	}
+
+	private void assertSameScene(JsonElement json) throws IOException {
+		Path path = write(json);
+		JsonElement expected = gsonMakerLoad(path);
+		assertEquals(json, expected);
+		assertEquals(expected, sceneLoaderLoad(path));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void loadsTheScenesLikeGsonMaker(String name) throws Exception {
+		assertSameScene(gson.toJsonTree(Scenes.class.getMethod(name).invoke(null)));
+	}
+
+	@Test
+	void loadsGroupsLikeGsonMaker() throws IOException {
+		List<Surface> wheel = new ArrayList<>();
+		wheel.add(new Surface(new Sphere(new Point(), 1), Material.getMetalMaterial()));
+		wheel.add(new Surface(new AxisAlignedBox(new Point(-0.2, -0.2, -1.2), new Point(0.2, 0.2, 1.2)), new Material()));
+		List<Surface> car = new ArrayList<>();
+		car.add(new Surface(new AxisAlignedBox(new Point(-3, -1, 1), new Point(3, 1, 2)), Material.getGlassMaterial(true)));
+		car.add(new Surface(new Instance("wheel").initTranslation(new Vec(-2, 0, 0)), null));
+		car.add(new Surface(new Instance("wheel").initTranslation(new Vec(2, 0, 0)).initRotation(new Vec(0, 0, 180)), null));
+		Scene scene = Scenes.scene1().addGroup("wheel", wheel).addGroup("car", car)
+				.addSurface(new Surface(new Instance("car").initScale(0.5).initRotation(new Vec(0, 0, 30)), null))
+				.addLightSource(new PointLight().initPosition(new Point(0, 0, 10)));
+		assertSameScene(gson.toJsonTree(scene));
+	}
+
+	@Test
+	void readsDataWrittenBeforeTheClassName() throws IOException {
+		JsonObject json = gson.toJsonTree(Scenes.scene2()).getAsJsonObject();
+		for(JsonElement surface : json.getAsJsonArray("surfaces")) {
+			JsonObject shape = surface.getAsJsonObject().getAsJsonObject("shape");
+			JsonObject reordered = new JsonObject();
+			reordered.add(GsonMaker.DATA, shape.get(GsonMaker.DATA));
+			reordered.add(GsonMaker.CLASSNAME, shape.get(GsonMaker.CLASSNAME));
+			surface.getAsJsonObject().add("shape", reordered);
+		}
+		Path path = write(json);
+		assertEquals(gsonMakerLoad(path), sceneLoaderLoad(path));
+	}
+
+	@Test
+	void rejectsUnknownClasses() throws IOException {
+		JsonObject json = gson.toJsonTree(Scenes.scene1()).getAsJsonObject();
+		json.getAsJsonArray("lightSources").get(0).getAsJsonObject().addProperty(GsonMaker.CLASSNAME, "edu.cg.Lamp");
+		Path path = write(json);
+		assertThrows(JsonParseException.class, () -> new SceneLoader().load(path.toString(), message -> {}));
+	}
+}
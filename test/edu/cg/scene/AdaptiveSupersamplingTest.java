@@ -0,0 +1,78 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cg.algebra.Point;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Checks which pixels are picked for supersampling by Scene.findPixelsToRefine.
+ */
+class AdaptiveSupersamplingTest {
+	private static final int WIDTH = 5;
+	private static final int HEIGHT = 4;
+	private static final int THRESHOLD = 25;
+
+	private final Surface surface = new Surface(new Sphere(new Point(), 1), new Material());
+	private final Surface other = new Surface(new Sphere(new Point(), 1), new Material());
+
+	private final int[] rgb = new int[WIDTH * HEIGHT];
+	private final Surface[] surfaces = new Surface[WIDTH * HEIGHT];
+	private final long[] instances = new long[WIDTH * HEIGHT];
+
+	AdaptiveSupersamplingTest() {
+		Arrays.fill(rgb, 0x808080);
+		Arrays.fill(surfaces, surface);
+	}
+
+	private boolean[] refine() {
+		return Scene.findPixelsToRefine(WIDTH, HEIGHT, rgb, surfaces, instances, THRESHOLD);
+	}
+
+	//the pixel at the given position and its four neighbours
+	private static boolean[] cross(int x, int y) {
+		boolean[] expected = new boolean[WIDTH * HEIGHT];
+		expected[y * WIDTH + x] = true;
+		expected[y * WIDTH + x - 1] = expected[y * WIDTH + x + 1] = true;
+		expected[(y - 1) * WIDTH + x] = expected[(y + 1) * WIDTH + x] = true;
+		return expected;
+	}
+
+	@Test
+	void uniformImageIsNotRefined() {
+		assertArrayEquals(new boolean[WIDTH * HEIGHT], refine());
+	}
+
+	@Test
+	void smallColorDifferencesAreNotRefined() {
+		rgb[2 * WIDTH + 2] = 0x808080 + THRESHOLD;
+		rgb[WIDTH + 1] = 0x808080 - (THRESHOLD << 16);
+		assertArrayEquals(new boolean[WIDTH * HEIGHT], refine());
+	}
+
+	@Test
+	void pixelsAroundAColorEdgeAreRefined() {
+		rgb[2 * WIDTH + 2] = 0x808080 + ((THRESHOLD + 1) << 8);
+		assertArrayEquals(cross(2, 2), refine());
+	}
+
+	@Test
+	void pixelsAroundASilhouetteAreRefined() {
+		surfaces[WIDTH + 3] = other;
+		assertArrayEquals(cross(3, 1), refine());
+		surfaces[WIDTH + 3] = null;
+		assertArrayEquals(cross(3, 1), refine());
+	}
+
+	@Test
+	void pixelsBetweenInstancesAreRefined() {
+		instances[2 * WIDTH + 1] = 7;
+		assertArrayEquals(cross(1, 2), refine());
+	}
+}
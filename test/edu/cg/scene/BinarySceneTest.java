@@ -0,0 +1,166 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import edu.cg.Scenes;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.lightSources.DirectionalLight;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Checks that a scene read back from a binary scene file has the same description (as written by the JSON
+ * format, which keeps every field of the description) as the scene that was written.
+ */
+class BinarySceneTest {
+	@TempDir
+	Path directory;
+
+	private Scene writeAndRead(Scene scene) throws IOException {
+		Path path = directory.resolve("scene" + BinaryScene.EXTENSION);
+		BinaryScene.write(scene, path);
+		return BinaryScene.read(path);
+	}
+
+	private static void assertSameImage(Scene expected, Scene scene) throws Exception {
+		BufferedImage expectedImage = expected.render(40, 30, 2, message -> {});
+		BufferedImage image = scene.render(40, 30, 2, message -> {});
+		for(int y = 0; y < 30; ++y)
+			for(int x = 0; x < 40; ++x)
+				assertEquals(expectedImage.getRGB(x, y), image.getRGB(x, y), "pixel " + x + ", " + y);
+	}
+
+	private static void assertSameDescription(Scene expected, Scene scene) {
+		assertEquals(description(expected), description(scene));
+	}
+
+	//the JSON of the scene, without the names of the boxes: they are numbered by the order the boxes were created
+	//in, and aren't written to binary scene files
+	private static JsonElement description(Scene scene) {
+		JsonObject json = GsonMaker.getInstance().toJsonTree(scene).getAsJsonObject();
+		for(JsonElement surface : json.getAsJsonArray("surfaces"))
+			surface.getAsJsonObject().getAsJsonObject("shape").getAsJsonObject("DATA").remove("name");
+		return json;
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void writeThenReadKeepsTheScene(String name) throws Exception {
+		Scene scene = (Scene)Scenes.class.getMethod(name).invoke(null);
+		assertSameDescription(scene, writeAndRead(scene));
+	}
+
+	@Test
+	void writeThenReadKeepsRandomScenes() throws Exception {
+		RandomGeometry geometry = new RandomGeometry(9, 10);
+		List<Material> materials = Arrays.asList(new Material(), Material.getGlassMaterial(true),
+				Material.getMetalMaterial(), Material.getRandomMaterial());
+		Scene scene = new Scene().initName("random scène").initMaxRecursionLevel(4)
+				.initAntiAliasingFactor(2).initRenderReflections(true).initAmbient(new Vec(0.2, 0.3, 0.4))
+				.initBackgroundColor(new Vec(0.1))
+				.initCamera(new Point(0, -20, 5), new Vec(0, 1, -0.2), new Vec(0, 0, 1), 2)
+				.addLightSource(new DirectionalLight().initDirection(geometry.direction()).initIntensity(new Vec(0.5)))
+				.addLightSource(new PointLight().initPosition(geometry.point(10)).initDecayFactors(0.1, 0.2, 1))
+				.addLightSource(new Spotlight().initPosition(geometry.point(10)).initDirection(geometry.direction())
+						.initIntensity(new Vec(0.3, 0.6, 0.9)));
+		//the surfaces share the materials, and the file keeps each material once
+		for(Surface surface : geometry.surfaces(200, 3))
+			scene.addSurface(new Surface(surface.shape(),
+					materials.get(geometry.random().nextInt(materials.size()))));
+
+		Scene read = writeAndRead(scene);
+		assertSameDescription(scene, read);
+		//the read scene renders the shapes compiled straight from the file
+		assertSameImage(scene, read);
+	}
+
+	@Test
+	void addedSurfacesAreRendered() throws Exception {
+		Scene scene = Scenes.scene2();
+		Scene read = writeAndRead(scene);
+		read.render(40, 30, 2, message -> {});
+		Surface sphere = new Surface(new Sphere(new Point(0, 0, -6), 1.5), Material.getMetalMaterial());
+		assertSameImage(scene.addSurface(sphere), read.addSurface(sphere));
+	}
+
+	@Test
+	void writeRejectsGroups() {
+		RandomGeometry geometry = new RandomGeometry(10, 10);
+		Scene scene = new Scene().addGroup("group", geometry.surfaces(3, 0));
+		assertThrows(IllegalArgumentException.class, () -> BinaryScene.write(scene, directory.resolve("group")));
+	}
+
+	@Test
+	void readRejectsOtherFiles() throws IOException {
+		Path path = directory.resolve("scene.json");
+		Files.write(path, GsonMaker.getInstance().toJson(Scenes.scene1()).getBytes());
+		assertThrows(IOException.class, () -> BinaryScene.read(path));
+	}
+
+	@Test
+	void readOrdersTheCornersOfBoxes() throws Exception {
+		Scene scene = Scenes.scene3();
+		Path path = directory.resolve("scene" + BinaryScene.EXTENSION);
+		BinaryScene.write(scene, path);
+		//the boxes come last: the x coordinates of the corners of the last box are swapped
+		byte[] bytes = Files.readAllBytes(path);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int min = bytes.length - 48, max = bytes.length - 24;
+		double x = buffer.getDouble(min);
+		buffer.putDouble(min, buffer.getDouble(max)).putDouble(max, x);
+		Files.write(path, bytes);
+		assertSameImage(scene, BinaryScene.read(path));
+	}
+
+	@Test
+	void readRejectsTruncatedFiles() throws IOException {
+		Path path = directory.resolve("scene" + BinaryScene.EXTENSION);
+		BinaryScene.write(Scenes.scene3(), path);
+		byte[] bytes = Files.readAllBytes(path);
+		for(int length = 0; length < bytes.length; ++length) {
+			Path truncated = directory.resolve("truncated" + BinaryScene.EXTENSION);
+			Files.write(truncated, Arrays.copyOf(bytes, length));
+			assertThrows(IOException.class, () -> BinaryScene.read(truncated), "length " + length);
+		}
+	}
+
+	//the counts of the header (lights, materials, surfaces, spheres, plains, boxes) and the length of the name.
+	//a count 8 larger needs more bytes than the file has (a name 1 byte longer may still fit in its padding)
+	@ParameterizedTest
+	@ValueSource(ints = {5, 6, 7, 8, 9, 10, 24})
+	void readRejectsInvalidCounts(int index) throws IOException {
+		Path path = directory.resolve("scene" + BinaryScene.EXTENSION);
+		BinaryScene.write(Scenes.scene3(), path);
+		byte[] bytes = Files.readAllBytes(path);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int count = buffer.getInt(4 * index);
+		for(int invalid : new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE / 4 + 1, count + 8}) {
+			buffer.putInt(4 * index, invalid);
+			Files.write(path, bytes);
+			assertThrows(IOException.class, () -> BinaryScene.read(path), "count " + invalid);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Compares the searches of the hierarchy with a brute force search over all the surfaces.
+ */
+class BoundingVolumeHierarchyTest {
+	private static final int RAYS = 5000;
+
+	private static long[] tests() {
+		return new long[CompiledScene.TYPE_NAMES.length];
+	}
+
+	//the closest hit of the ray, equally distant hits are resolved in favor of the first surface
+	private static Hit bruteForceMinHit(List<Surface> surfaces, Ray ray) {
+		Hit minHit = null;
+		for(Surface surface : surfaces) {
+			Hit hit = surface.intersect(ray);
+			if(hit != null && (minHit == null || hit.t() < minHit.t()))
+				minHit = hit;
+		}
+		return minHit;
+	}
+
+	private static boolean bruteForceOccludes(List<Surface> surfaces, Ray ray, double tMax) {
+		for(Surface surface : surfaces)
+			if(surface.occludes(ray, tMax))
+				return true;
+		return false;
+	}
+
+	private static void assertSameHit(Hit expected, Hit hit, String message) {
+		if(expected == null) {
+			assertNull(hit, message);
+			return;
+		}
+		assertNotNull(hit, message);
+		assertEquals(expected.t(), hit.t(), message);
+		assertSame(expected.getSurface(), hit.getSurface(), message);
+	}
+
+	@Test
+	void findMinHitMatchesBruteForce() {
+		RandomGeometry geometry = new RandomGeometry(1, 10);
+		List<Surface> surfaces = geometry.surfaces(300, 3);
+		BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(new CompiledScene(surfaces));
+		for(int r = 0; r < RAYS; ++r) {
+			Ray ray = geometry.ray();
+			assertSameHit(bruteForceMinHit(surfaces, ray), bvh.findMinHit(ray, tests()), "ray " + r);
+		}
+	}
+
+	@Test
+	void findMinHitMatchesBruteForceInInstances() {
+		RandomGeometry geometry = new RandomGeometry(2, 10);
+		List<Surface> surfaces = geometry.surfaces(50, 1);
+		List<Surface> group = new RandomGeometry(3, 2).surfaces(40, 0);
+		List<Surface> nested = new ArrayList<>(new RandomGeometry(4, 2).surfaces(10, 0));
+		nested.add(geometry.instance("group", group));
+		for(int i = 0; i < 20; ++i)
+			surfaces.add(geometry.instance(i % 2 == 0 ? "group" : "nested", i % 2 == 0 ? group : nested));
+		BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(new CompiledScene(surfaces));
+		for(int r = 0; r < RAYS; ++r) {
+			Ray ray = geometry.ray();
+			assertSameHit(bruteForceMinHit(surfaces, ray), bvh.findMinHit(ray, tests()), "ray " + r);
+		}
+	}
+
+	@Test
+	void findOccluderMatchesBruteForce() {
+		RandomGeometry geometry = new RandomGeometry(5, 10);
+		List<Surface> surfaces = geometry.surfaces(300, 2);
+		List<Surface> group = new RandomGeometry(6, 2).surfaces(40, 0);
+		for(int i = 0; i < 10; ++i)
+			surfaces.add(geometry.instance("group", group));
+		BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(new CompiledScene(surfaces));
+		for(int r = 0; r < RAYS; ++r) {
+			Ray ray = geometry.ray();
+			double tMax = r % 4 == 0 ? Double.POSITIVE_INFINITY : 10 * geometry.random().nextDouble();
+			boolean expected = bruteForceOccludes(surfaces, ray, tMax);
+			assertEquals(expected, bvh.anyHit(ray, tMax, tests()), "ray " + r + ", tMax " + tMax);
+			int occluder = bvh.findOccluder(ray, tMax, tests());
+			assertEquals(expected, occluder >= 0);
+			if(occluder >= 0)
+				assertTrue(bvh.occludes(occluder, ray, tMax, tests()));
+		}
+	}
+
+	@Test
+	void packetsMatchSingleRays() {
+		RandomGeometry geometry = new RandomGeometry(7, 10);
+		List<Surface> surfaces = geometry.surfaces(300, 3);
+		BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(new CompiledScene(surfaces));
+		RayPacket packet = new RayPacket(16);
+		for(int p = 0; p < RAYS / 16; ++p) {
+			packet.reset(geometry.point(12));
+			for(int r = 0; r < 16; ++r)
+				packet.add(geometry.point(12));
+			bvh.intersect(packet, tests());
+			for(int r = 0; r < packet.size; ++r) {
+				Hit expected = bruteForceMinHit(surfaces, packet.ray(r));
+				if(expected == null) {
+					assertEquals(-1, packet.hitId[r]);
+					continue;
+				}
+				assertSame(expected.getSurface(), surfaces.get(packet.hitId[r]), "packet " + p + ", ray " + r);
+				assertEquals(expected.t(), packet.t[r], 1e-9 * expected.t());
+			}
+		}
+	}
+
+	@Test
+	void emptyScene() {
+		BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(new CompiledScene(new ArrayList<>()));
+		Ray ray = new RandomGeometry(8, 1).ray();
+		assertEquals(0, bvh.size());
+		assertNull(bvh.findMinHit(ray, tests()));
+		assertEquals(-1, bvh.findOccluder(ray, Double.POSITIVE_INFINITY, tests()));
+	}
+}
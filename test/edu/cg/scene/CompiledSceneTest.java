@@ -0,0 +1,159 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.cg.algebra.Bounds;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.RayPacket;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Compares the intersections computed from the arrays of the compiled scene with the ones of the shapes.
+ */
+class CompiledSceneTest {
+	private static final int RAYS = 2000;
+	private static final int INSTANCES = 12;
+
+	private RandomGeometry geometry;
+	private List<Surface> surfaces;
+	private CompiledScene compiled;
+
+	@BeforeEach
+	void compile() {
+		geometry = new RandomGeometry(4, 10);
+		surfaces = geometry.surfaces(60, 4);
+		List<Surface> group = new RandomGeometry(5, 2).surfaces(20, 0);
+		for(int i = 0; i < INSTANCES; ++i)
+			surfaces.add(geometry.instance("group", group));
+		compiled = new CompiledScene(surfaces);
+	}
+
+	private static double intersect(CompiledScene compiled, int index, Ray ray) {
+		Point o = ray.source();
+		Vec d = ray.direction(), inv = ray.inverseDirection();
+		return compiled.intersect(index, ray, o.x, o.y, o.z, d.x, d.y, d.z, inv.x, inv.y, inv.z,
+				new long[CompiledScene.TYPE_NAMES.length]);
+	}
+
+	private static boolean occludes(CompiledScene compiled, int index, Ray ray, double tMax) {
+		Point o = ray.source();
+		Vec d = ray.direction(), inv = ray.inverseDirection();
+		return compiled.occludes(index, ray, o.x, o.y, o.z, d.x, d.y, d.z, inv.x, inv.y, inv.z, tMax,
+				new long[CompiledScene.TYPE_NAMES.length]);
+	}
+
+	@Test
+	void intersectMatchesTheShapes() {
+		for(int r = 0; r < RAYS; ++r) {
+			Ray ray = geometry.ray();
+			for(int i = 0; i < surfaces.size(); ++i) {
+				Hit hit = surfaces.get(i).intersect(ray);
+				double expected = hit == null ? Double.POSITIVE_INFINITY : hit.t();
+				assertEquals(expected, intersect(compiled, i, ray), "ray " + r + ", surface " + i);
+			}
+		}
+	}
+
+	@Test
+	void occludesMatchesTheShapes() {
+		for(int r = 0; r < RAYS; ++r) {
+			Ray ray = geometry.ray();
+			double tMax = r % 4 == 0 ? Double.POSITIVE_INFINITY : 20 * geometry.random().nextDouble();
+			for(int i = 0; i < surfaces.size(); ++i)
+				assertEquals(surfaces.get(i).occludes(ray, tMax), occludes(compiled, i, ray, tMax),
+						"ray " + r + ", surface " + i + ", tMax " + tMax);
+		}
+	}
+
+	@Test
+	void hitMatchesTheShapes() {
+		for(int r = 0; r < RAYS; ++r) {
+			Ray ray = geometry.ray();
+			for(int i = 0; i < surfaces.size(); ++i) {
+				Hit expected = surfaces.get(i).intersect(ray);
+				Hit hit = compiled.hit(i, ray);
+				if(expected == null) {
+					assertNull(hit);
+					continue;
+				}
+				assertNotNull(hit);
+				assertEquals(expected.t(), hit.t());
+				assertEquals(expected.getNormalToSurface().x, hit.getNormalToSurface().x);
+				assertEquals(expected.getNormalToSurface().y, hit.getNormalToSurface().y);
+				assertEquals(expected.getNormalToSurface().z, hit.getNormalToSurface().z);
+				assertEquals(expected.isWithinTheSurface(), hit.isWithinTheSurface());
+				assertSame(expected.getSurface(), hit.getSurface());
+				if(compiled.type(i) == CompiledScene.INSTANCE) {
+					//hits on the shared surfaces of a group are told apart by their instance
+					assertEquals(-1, hit.getSurfaceIndex());
+					assertNotEquals(0, hit.getInstanceKey());
+				} else {
+					assertEquals(i, hit.getSurfaceIndex());
+					assertEquals(0, hit.getInstanceKey());
+				}
+			}
+		}
+	}
+
+	@Test
+	void instancesOfAGroupHaveDifferentKeys() {
+		List<Long> keys = new ArrayList<>();
+		for(int i = 0; i < surfaces.size(); ++i) {
+			if(compiled.type(i) != CompiledScene.INSTANCE)
+				continue;
+			//rays from far away towards the middle of the instance, until one of them hits the group
+			Bounds bounds = compiled.bounds(i);
+			Point center = new Point(bounds.center(0), bounds.center(1), bounds.center(2));
+			Hit hit = null;
+			for(int attempt = 0; hit == null && attempt < 1000; ++attempt)
+				hit = compiled.hit(i, new Ray(geometry.point(30), center.add(geometry.point(0.5))));
+			assertNotNull(hit);
+			assertFalse(keys.contains(hit.getInstanceKey()));
+			keys.add(hit.getInstanceKey());
+		}
+		assertEquals(INSTANCES, keys.size());
+	}
+
+	@Test
+	void packetsMatchSingleRays() {
+		for(int p = 0; p < RAYS / 16; ++p) {
+			RayPacket packet = new RayPacket(16);
+			packet.reset(geometry.point(12));
+			for(int r = 0; r < 16; ++r)
+				packet.add(geometry.point(12));
+			long[] tests = new long[CompiledScene.TYPE_NAMES.length];
+			for(int i = 0; i < surfaces.size(); ++i)
+				compiled.intersect(i, packet, tests);
+
+			for(int r = 0; r < packet.size; ++r) {
+				Ray ray = packet.ray(r);
+				double minT = Double.POSITIVE_INFINITY;
+				int minIndex = -1;
+				for(int i = 0; i < surfaces.size(); ++i) {
+					double t = intersect(compiled, i, ray);
+					if(t < minT) {
+						minT = t;
+						minIndex = i;
+					}
+				}
+				assertEquals(minIndex, packet.hitId[r], "packet " + p + ", ray " + r);
+				if(minIndex >= 0)
+					assertEquals(minT, packet.t[r], 1e-9 * minT);
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.lightSources.DirectionalLight;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+
+/**
+ * Compares the lights the grid finds for random points with evaluating every light at these points.
+ */
+class LightGridTest {
+	private static final int POINTS = 5000;
+	private static final double CUTOFF = 0.5 / 255;
+
+	private static Point point(Random random, double extent) {
+		return new Point(extent * (2 * random.nextDouble() - 1), extent * (2 * random.nextDouble() - 1),
+				extent * (2 * random.nextDouble() - 1));
+	}
+
+	private static Vec color(Random random) {
+		return new Vec(random.nextDouble(), random.nextDouble(), random.nextDouble()).mult(0.2);
+	}
+
+	//point lights and spotlights with various decays, and a directional light
+	private static List<Light> lights() {
+		Random random = new Random(23);
+		List<Light> lights = new ArrayList<>();
+		for(int i = 0; i < 200; ++i) {
+			double kq = i % 3 == 0 ? 0 : random.nextDouble(), kl = random.nextDouble(), kc = 1 + random.nextDouble();
+			if(i % 4 == 0)
+				lights.add(new Spotlight().initDirection(new Vec(random.nextGaussian(), random.nextGaussian(),
+						random.nextGaussian()).normalize()).initPosition(point(random, 20)).initIntensity(color(random))
+						.initDecayFactors(kq, kl, kc));
+			else
+				lights.add(new PointLight().initPosition(point(random, 20)).initIntensity(color(random))
+						.initDecayFactors(kq, kl, kc));
+			if(i == 100)
+				lights.add(new DirectionalLight().initDirection(new Vec(0, 0, -1)).initIntensity(new Vec(0.1)));
+		}
+		return lights;
+	}
+
+	//the strongest channel of the intensity of the light at the point, 0 if the light doesn't illuminate it
+	private static double strength(Light light, Point point) {
+		Ray rayToLight = light.rayToLight(point);
+		if(!light.illuminates(rayToLight))
+			return 0;
+		Vec intensity = light.intensity(point, rayToLight);
+		return Math.max(intensity.x, Math.max(intensity.y, intensity.z));
+	}
+
+	@Test
+	void everyLightAboveTheCutoffIsFound() {
+		List<Light> lights = lights();
+		LightGrid grid = new LightGrid(lights, CUTOFF);
+		assertTrue(grid.cellsCount() > 1);
+		assertEquals(lights.size() - 1, grid.boundedCount());
+		Random random = new Random(5);
+		int culled = 0;
+		for(int i = 0; i < POINTS; ++i) {
+			Point point = point(random, 30);
+			int[] found = grid.lights(point);
+			assertTrue(IntStream.range(1, found.length).allMatch(k -> found[k - 1] < found[k]));
+			for(int light = 0; light < lights.size(); ++light) {
+				final int index = light;
+				boolean evaluated = IntStream.of(found).anyMatch(k -> k == index) && grid.reaches(light, point);
+				if(!evaluated) {
+					++culled;
+					assertTrue(strength(lights.get(light), point) < CUTOFF, "light " + light + " at " + point);
+				}
+			}
+		}
+		//the grid is of use only if it culls most of the lights
+		assertTrue(culled > POINTS * lights.size() / 2, culled + " culled");
+	}
+
+	@Test
+	void zeroCutoffEvaluatesEveryLight() {
+		List<Light> lights = lights();
+		LightGrid grid = new LightGrid(lights, 0);
+		Random random = new Random(5);
+		int[] all = IntStream.range(0, lights.size()).toArray();
+		for(int i = 0; i < 100; ++i) {
+			Point point = point(random, 30);
+			assertArrayEquals(all, grid.lights(point));
+			for(int light : all)
+				assertTrue(grid.reaches(light, point));
+		}
+	}
+
+	@Test
+	void intensityAtTheRangeIsTheCutoff() {
+		for(Light light : lights()) {
+			double range = light.range(CUTOFF);
+			if(light instanceof DirectionalLight) {
+				assertEquals(Double.POSITIVE_INFINITY, range);
+				continue;
+			}
+			//spotlights are strongest along their direction
+			PointLight pointLight = (PointLight)light;
+			Vec direction = light instanceof Spotlight ? ((Spotlight)light).direction() : new Vec(0, 0, 1);
+			if(range > 0)
+				assertEquals(CUTOFF, strength(light, pointLight.position().add(range, direction)), 1e-12);
+			assertTrue(strength(light, pointLight.position().add(range + 1e-3, direction)) < CUTOFF);
+		}
+	}
+}
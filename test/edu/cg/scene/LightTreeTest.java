@@ -0,0 +1,120 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.lightSources.DirectionalLight;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+
+/**
+ * Checks that the light tree picks every light it holds, with probabilities which sum to 1, so weighing each
+ * picked light by the inverse of its probability estimates the sum of all the lights without bias.
+ */
+class LightTreeTest {
+	private static final int LIGHTS = 300;
+	private static final int DIRECTIONAL = 150;
+
+	private static Point point(Random random, double extent) {
+		return new Point(extent * (2 * random.nextDouble() - 1), extent * (2 * random.nextDouble() - 1),
+				extent * (2 * random.nextDouble() - 1));
+	}
+
+	//point lights and spotlights with various intensities and decays, and a directional light
+	private static List<Light> lights() {
+		Random random = new Random(24);
+		List<Light> lights = new ArrayList<>();
+		for(int i = 0; i < LIGHTS; ++i) {
+			Vec intensity = new Vec(random.nextDouble(), random.nextDouble(), random.nextDouble());
+			double kq = i % 3 == 0 ? 0 : random.nextDouble(), kl = random.nextDouble(), kc = 1 + random.nextDouble();
+			if(i == DIRECTIONAL)
+				lights.add(new DirectionalLight().initDirection(new Vec(0, 0, -1)).initIntensity(new Vec(0.1)));
+			else if(i % 4 == 0)
+				lights.add(new Spotlight().initDirection(new Vec(0, 0, -1)).initPosition(point(random, 20))
+						.initIntensity(intensity).initDecayFactors(kq, kl, kc));
+			else
+				lights.add(new PointLight().initPosition(point(random, 20)).initIntensity(intensity)
+						.initDecayFactors(kq, kl, kc));
+		}
+		return lights;
+	}
+
+	/**
+	 * Picks the lights of the tree for the point in the order they cover [0, 1): the light picked at u covers
+	 * [u, u + its probability), so the next one is picked at the end of this interval.
+	 * @return the probability of each light of the tree, by its position in the scene
+	 */
+	private static Map<Integer, Double> probabilities(LightTree tree, Point point) {
+		RenderContext ctx = new RenderContext(1, LIGHTS);
+		Map<Integer, Double> probabilities = new HashMap<>();
+		double u = 0;
+		int previous = -1, retries = 0;
+		while(u < 1) {
+			int light = tree.sample(point, u, ctx);
+			assertTrue(light >= 0);
+			//u may be rounded down into the interval of the previous light
+			if(light == previous) {
+				assertTrue(++retries < 1000, "light " + light + " covers more than its probability");
+				u = Math.nextUp(u);
+				continue;
+			}
+			assertTrue(ctx.lightProbability > 0);
+			assertNull(probabilities.put(light, ctx.lightProbability), "light " + light + " picked again");
+			u += ctx.lightProbability;
+			previous = light;
+		}
+		return probabilities;
+	}
+
+	@Test
+	void probabilitiesOfTheLightsSumToOne() {
+		LightTree tree = new LightTree(lights());
+		assertEquals(LIGHTS - 1, tree.sampledCount());
+		assertArrayEquals(new int[] {DIRECTIONAL}, tree.unsampled());
+		Random random = new Random(5);
+		for(int i = 0; i < 50; ++i) {
+			Map<Integer, Double> probabilities = probabilities(tree, point(random, 30));
+			assertEquals(LIGHTS - 1, probabilities.size());
+			assertFalse(probabilities.containsKey(DIRECTIONAL));
+			assertEquals(1, probabilities.values().stream().mapToDouble(Double::doubleValue).sum(), 1e-9);
+		}
+	}
+
+	@Test
+	void randomPicksFollowTheProbabilities() {
+		LightTree tree = new LightTree(lights());
+		Point point = new Point(1, 2, 3);
+		Map<Integer, Double> probabilities = probabilities(tree, point);
+		RenderContext ctx = new RenderContext(1, LIGHTS);
+		ctx.seed(0.25, 0.75);
+		Map<Integer, Integer> counts = new HashMap<>();
+		int samples = 200000;
+		for(int i = 0; i < samples; ++i) {
+			int light = tree.sample(point, ctx.random(), ctx);
+			assertEquals(probabilities.get(light), ctx.lightProbability, 1e-12);
+			counts.merge(light, 1, Integer::sum);
+		}
+		//the frequency of each likely light is within 5 standard deviations of its probability
+		for(Map.Entry<Integer, Double> entry : probabilities.entrySet()) {
+			double p = entry.getValue();
+			if(p * samples < 100)
+				continue;
+			double frequency = counts.getOrDefault(entry.getKey(), 0) / (double)samples;
+			assertEquals(p, frequency, 5 * Math.sqrt(p * (1 - p) / samples), "light " + entry.getKey());
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package edu.cg.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Instance;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Random shapes and rays for the tests, which compare the accelerated searches with the shapes themselves.
+ * The shapes are placed inside a cube of the given size around the origin, and the rays start inside
+ * a slightly larger cube, so some rays start inside shapes and some miss everything.
+ */
+class RandomGeometry {
+	private final Random random;
+	private final double size;
+
+	RandomGeometry(long seed, double size) {
+		this.random = new Random(seed);
+		this.size = size;
+	}
+
+	Random random() {
+		return random;
+	}
+
+	double coordinate(double extent) {
+		return (2 * random.nextDouble() - 1) * extent;
+	}
+
+	Point point(double extent) {
+		return new Point(coordinate(extent), coordinate(extent), coordinate(extent));
+	}
+
+	//a random direction, axis aligned once in a while, so the slab tests see zero components too
+	Vec direction() {
+		if(random.nextInt(8) == 0) {
+			Vec[] axes = {new Vec(1, 0, 0), new Vec(0, 1, 0), new Vec(0, 0, 1)};
+			Vec axis = axes[random.nextInt(3)];
+			return random.nextBoolean() ? axis : axis.neg();
+		}
+		Vec direction;
+		do {
+			direction = new Vec(coordinate(1), coordinate(1), coordinate(1));
+		} while(direction.norm() < 0.1);
+		return direction;
+	}
+
+	Ray ray() {
+		return new Ray(point(1.2 * size), direction());
+	}
+
+	Surface sphere() {
+		return new Surface(new Sphere(point(size), 0.05 * size + 0.2 * size * random.nextDouble()), new Material());
+	}
+
+	Surface box() {
+		Point min = point(size);
+		Point max = new Point(min.x + 0.4 * size * random.nextDouble(), min.y + 0.4 * size * random.nextDouble(),
+				min.z + 0.4 * size * random.nextDouble());
+		return new Surface(new AxisAlignedBox(min, max), new Material());
+	}
+
+	Surface plain() {
+		return new Surface(new Plain(direction(), point(size)), new Material());
+	}
+
+	/**
+	 * @return the given number of spheres and boxes (in random order), and the given number of plains
+	 */
+	List<Surface> surfaces(int boundedCount, int plainsCount) {
+		List<Surface> surfaces = new ArrayList<>();
+		for(int i = 0; i < boundedCount; ++i)
+			surfaces.add(random.nextBoolean() ? sphere() : box());
+		for(int i = 0; i < plainsCount; ++i)
+			surfaces.add(random.nextInt(surfaces.size() + 1), plain());
+		return surfaces;
+	}
+
+	/**
+	 * @return an instance of the given group with a random transform, bound to the group
+	 */
+	Surface instance(String name, List<Surface> group) {
+		Instance instance = new Instance(name)
+				.initTranslation(new Vec(coordinate(size), coordinate(size), coordinate(size)))
+				.initScale(0.5 + random.nextDouble())
+				.initRotation(new Vec(360 * random.nextDouble(), 360 * random.nextDouble(), 360 * random.nextDouble()));
+		instance.bind(group);
+		return new Surface(instance, null);
+	}
+}
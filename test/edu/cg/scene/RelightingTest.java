@@ -0,0 +1,78 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import edu.cg.menu.GsonMaker;
+
+/**
+ * Checks that shading the primary hits kept by a render (see GBuffer) gives the same image as a full render,
+ * after the lights and the materials of the scene were edited.
+ */
+class RelightingTest {
+	private static final int WIDTH = 81;
+	private static final int HEIGHT = 63;
+
+	private static void scale(JsonObject vec, double factor) {
+		for(String axis : new String[] {"x", "y", "z"})
+			vec.addProperty(axis, vec.get(axis).getAsDouble() * factor);
+	}
+
+	//a copy of the scene (like the scene file loaded again) with dimmer lights and a darker first surface
+	private static Scene edited(Scene scene, boolean moveSurface) {
+		Gson gson = GsonMaker.getInstance();
+		JsonObject json = gson.toJsonTree(scene).getAsJsonObject();
+		for(JsonElement light : json.getAsJsonArray("lightSources"))
+			scale(light.getAsJsonObject().getAsJsonObject("DATA").getAsJsonObject("intensity"), 0.6);
+		JsonObject surface = json.getAsJsonArray("surfaces").get(0).getAsJsonObject();
+		scale(surface.getAsJsonObject("material").getAsJsonObject("Kd"), 0.5);
+		//spheres and boxes are moved along x, plains along their normal
+		JsonObject shape = surface.getAsJsonObject("shape").getAsJsonObject("DATA");
+		if(moveSurface && shape.has("d"))
+			shape.addProperty("d", shape.get("d").getAsDouble() + 0.25);
+		else if(moveSurface)
+			for(String point : new String[] {"center", "minPoint", "maxPoint"})
+				if(shape.has(point))
+					shape.getAsJsonObject(point).addProperty("x", shape.getAsJsonObject(point).get("x").getAsDouble() + 0.25);
+		return gson.fromJson(json, Scene.class);
+	}
+
+	private static void assertRelitLikeAFullRender(String name, boolean moveSurface) throws Exception {
+		for(int factor = 1; factor <= 2; ++factor) {
+			Scene scene = SceneRenderTest.scene(name).initAntiAliasingFactor(factor).initRelighting(true);
+			scene.render(WIDTH, HEIGHT, 4, message -> {});
+			Scene relit = edited(scene, moveSurface).initAntiAliasingFactor(factor).initRelighting(true)
+					.initGBufferOf(scene);
+			BufferedImage image = relit.render(WIDTH, HEIGHT, 4, message -> {});
+			Scene full = edited(scene, moveSurface).initAntiAliasingFactor(factor);
+			BufferedImage expected = full.render(WIDTH, HEIGHT, 4, message -> {});
+			SceneRenderTest.assertSameImage(expected, image);
+			//the kept hits are used only if the geometry is the same
+			if(moveSurface)
+				assertEquals(full.getRaysCount(), relit.getRaysCount());
+			else
+				assertTrue(relit.getRaysCount() < full.getRaysCount());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void relitImageIsTheFullRender(String name) throws Exception {
+		assertRelitLikeAFullRender(name, false);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void changedGeometryIsTracedAgain(String name) throws Exception {
+		assertRelitLikeAFullRender(name, true);
+	}
+}
@@ -0,0 +1,66 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ray;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Checks that a render which fails in one of its tiles doesn't return while other tiles are still running.
+ */
+class RenderFailureTest {
+	private static final int FAILING_CALL = 50;
+
+	//a slow shape, which is missed by every ray but the one of the failing call
+	private static class FailingShape extends Shape {
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger running = new AtomicInteger();
+		final IllegalStateException failure = new IllegalStateException("failing tile");
+
+		@Override
+		public Hit intersect(Ray ray) {
+			running.incrementAndGet();
+			try {
+				if(calls.incrementAndGet() == FAILING_CALL)
+					throw failure;
+				LockSupport.parkNanos(2_000_000);
+				return null;
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(ExecutorStrategy.class)
+	void failedRenderWaitsForTheRunningTiles(ExecutorStrategy strategy) throws Exception {
+		assumeTrue(strategy.isAvailable());
+		FailingShape shape = new FailingShape();
+		Scene scene = SceneRenderTest.scene("scene1").addSurface(new Surface(shape, new Material()))
+				.initExecutorStrategy(strategy).initThreadsCount(4).initTileSize(8);
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> SceneRenderTest.render(scene));
+		//the work stealing pool wraps the failure once for each thread it is rethrown from
+		Throwable cause = e.getCause();
+		while(cause != shape.failure && cause.getCause() != null)
+			cause = cause.getCause();
+		assertSame(shape.failure, cause);
+		assertEquals(0, shape.running.get());
+		int calls = shape.calls.get();
+		Thread.sleep(100);
+		assertEquals(calls, shape.calls.get());
+	}
+}
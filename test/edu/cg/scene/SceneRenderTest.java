@@ -0,0 +1,67 @@
+package edu.cg.scene;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.cg.Scenes;
+
+/**
+ * Checks that the options which only change how a scene is rendered give the same image as a plain render.
+ */
+class SceneRenderTest {
+	private static final int WIDTH = 80;
+	private static final int HEIGHT = 60;
+
+	static Scene scene(String name) throws Exception {
+		return (Scene)Scenes.class.getMethod(name).invoke(null);
+	}
+
+	static BufferedImage render(Scene scene) throws Exception {
+		return scene.render(WIDTH, HEIGHT, 4, message -> {});
+	}
+
+	static void assertSameImage(BufferedImage expected, BufferedImage image) {
+		assertEquals(expected.getWidth(), image.getWidth());
+		assertEquals(expected.getHeight(), image.getHeight());
+		for(int y = 0; y < expected.getHeight(); ++y)
+			for(int x = 0; x < expected.getWidth(); ++x)
+				assertEquals(expected.getRGB(x, y), image.getRGB(x, y), "pixel " + x + ", " + y);
+	}
+
+	//renders the scene as it is and then with the given options, with both anti aliasing factors. The same scene
+	//object is rendered twice, since some of the scenes have random materials.
+	private static void assertSameImageWith(String name, UnaryOperator<Scene> options) throws Exception {
+		for(int factor = 1; factor <= 2; ++factor) {
+			Scene scene = scene(name).initAntiAliasingFactor(factor);
+			BufferedImage expected = render(scene);
+			assertSameImage(expected, render(options.apply(scene)));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void progressiveRendersTheSameImage(String name) throws Exception {
+		assertSameImageWith(name, scene -> scene.initProgressive(true));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void packetsRenderTheSameImage(String name) throws Exception {
+		assertSameImageWith(name, scene -> scene.initPacketSize(4));
+		assertSameImageWith(name, scene -> scene.initPacketSize(3).initProgressive(true));
+	}
+
+	//VIRTUAL_THREADS is tested only on runtimes which have virtual threads (Java 21)
+	@ParameterizedTest
+	@ValueSource(strings = {"scene1", "scene2", "scene3", "scene4", "scene5"})
+	void executorsRenderTheSameImage(String name) throws Exception {
+		for(ExecutorStrategy strategy : ExecutorStrategy.values())
+			if(strategy.isAvailable())
+				assertSameImageWith(name, scene -> scene.initExecutorStrategy(strategy).initThreadsCount(3).initTileSize(7));
+	}
+}
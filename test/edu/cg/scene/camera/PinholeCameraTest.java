@@ -0,0 +1,89 @@
+package edu.cg.scene.camera;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+
+/**
+ * Checks the cameras of the frames of camera paths.
+ */
+class PinholeCameraTest {
+	private static final double EPSILON = 1e-9;
+
+	private static void assertSameVec(Vec expected, Vec v) {
+		assertEquals(expected.x, v.x, EPSILON, v.toString());
+		assertEquals(expected.y, v.y, EPSILON, v.toString());
+		assertEquals(expected.z, v.z, EPSILON, v.toString());
+	}
+
+	//the vectors of the camera are finite, of unit length and perpendicular to each other
+	private static void assertOrthonormal(PinholeCamera camera) {
+		Vec towards = camera.getTowardsVec(), up = camera.getUpVec(), right = camera.getRightVec();
+		assertTrue(towards.isFinite() && up.isFinite() && right.isFinite());
+		assertEquals(1, towards.norm(), EPSILON);
+		assertEquals(1, up.norm(), EPSILON);
+		assertEquals(1, right.norm(), EPSILON);
+		assertEquals(0, towards.dot(up), EPSILON);
+		assertEquals(0, towards.dot(right), EPSILON);
+		assertEquals(0, up.dot(right), EPSILON);
+	}
+
+	private static List<PinholeCamera> path(PinholeCamera from, PinholeCamera to, int framesCount) {
+		List<PinholeCamera> frames = PinholeCamera.path(Arrays.asList(from, to), framesCount);
+		frames.forEach(PinholeCameraTest::assertOrthonormal);
+		assertSameVec(from.getTowardsVec(), frames.get(0).getTowardsVec());
+		assertSameVec(from.getUpVec(), frames.get(0).getUpVec());
+		assertSameVec(to.getTowardsVec(), frames.get(framesCount - 1).getTowardsVec());
+		assertSameVec(to.getUpVec(), frames.get(framesCount - 1).getUpVec());
+		return frames;
+	}
+
+	private static double angle(Vec u, Vec v) {
+		return Math.acos(Math.max(-1, Math.min(1, u.dot(v))));
+	}
+
+	@Test
+	void framesTurnAtAConstantSpeed() {
+		PinholeCamera from = new PinholeCamera(new Point(0, 0, 5), new Vec(0, 0, -1), new Vec(0, 1, 0), 2);
+		PinholeCamera to = new PinholeCamera(new Point(5, 0, 0), new Vec(-1, 0, 0.2), new Vec(0, 1, 0), 3);
+		List<PinholeCamera> frames = path(from, to, 9);
+		double step = angle(from.getTowardsVec(), to.getTowardsVec()) / 8;
+		for(int i = 1; i < frames.size(); ++i)
+			assertEquals(step, angle(frames.get(i - 1).getTowardsVec(), frames.get(i).getTowardsVec()), EPSILON);
+		assertEquals(2.5, frames.get(4).getDistanceToPlain(), EPSILON);
+	}
+
+	@Test
+	void oppositeTowardsVectorsTurnAroundTheUpVector() {
+		PinholeCamera from = new PinholeCamera(new Point(0, 0, 5), new Vec(0, 0, -1), new Vec(0, 1, 0), 2);
+		PinholeCamera to = new PinholeCamera(new Point(0, 0, -5), new Vec(0, 0, 1), new Vec(0, 1, 0), 2);
+		List<PinholeCamera> frames = path(from, to, 5);
+		assertEquals(0, frames.get(2).getTowardsVec().z, EPSILON);
+		for(PinholeCamera frame : frames)
+			assertSameVec(new Vec(0, 1, 0), frame.getUpVec());
+	}
+
+	@Test
+	void oppositeUpVectorsRollAroundTheTowardsVector() {
+		PinholeCamera from = new PinholeCamera(new Point(0, 0, 5), new Vec(0, 0, -1), new Vec(0, 1, 0), 2);
+		PinholeCamera to = new PinholeCamera(new Point(0, 0, 5), new Vec(0, 0, -1), new Vec(0, -1, 0), 2);
+		List<PinholeCamera> frames = path(from, to, 5);
+		assertEquals(0, frames.get(2).getUpVec().y, EPSILON);
+		for(PinholeCamera frame : frames)
+			assertSameVec(new Vec(0, 0, -1), frame.getTowardsVec());
+	}
+
+	@Test
+	void oppositeCamerasAreInterpolated() {
+		PinholeCamera from = new PinholeCamera(new Point(0, 0, 5), new Vec(0, 0, -1), new Vec(0, 1, 0), 2);
+		PinholeCamera to = new PinholeCamera(new Point(0, 0, -5), new Vec(0, 0, 1), new Vec(0, -1, 0), 2);
+		path(from, to, 7);
+	}
+}